@@ -30,6 +30,13 @@ android {
         sourceCompatibility = JavaVersion.VERSION_11
         targetCompatibility = JavaVersion.VERSION_11
     }
+
+    testOptions {
+        // The *Benchmark unit tests only run with -Pbenchmarks.
+        unitTests.all {
+            it.systemProperty("benchmarks", project.findProperty("benchmarks") != null)
+        }
+    }
 }
 
 dependencies {
@@ -40,6 +47,7 @@ dependencies {
     implementation(libs.navigation.ui)
 
     implementation("com.github.bumptech.glide:glide:4.16.0")
+    annotationProcessor("com.github.bumptech.glide:compiler:4.16.0")
     implementation("com.google.code.gson:gson:2.10.1")
     implementation(libs.activity.ktx)
 
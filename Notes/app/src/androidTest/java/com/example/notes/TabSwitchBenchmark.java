@@ -0,0 +1,121 @@
+package com.example.notes;
+
+import android.os.SystemClock;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.test.core.app.ActivityScenario;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.test.platform.app.InstrumentationRegistry;
+
+import com.google.android.material.bottomnavigation.BottomNavigationView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Time from tapping a bottom-nav tab to the first frame of its filled list, with each list
+ * inflating its own rows on the main thread as before {@link TaskRowPool}, and with the
+ * shared pool. Results go to logcat under the "TabSwitchBenchmark" tag.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TabSwitchBenchmark {
+    private static final String TAG = "TabSwitchBenchmark";
+    private static final int ROUNDS = 10;
+    private static final int TASKS_PER_LIST = 30;
+
+    private DataManager dataManager;
+    private final List<String> addedIds = new ArrayList<>();
+
+    @Before
+    public void addTasks() {
+        dataManager = DataManager.getInstance(InstrumentationRegistry.getInstrumentation().getTargetContext());
+        List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 2 * TASKS_PER_LIST; i++) {
+            tasks.add(new Task("Замер " + i, "Строка описания для замера " + i));
+        }
+        addedIds.addAll(dataManager.importTasks(tasks));
+        dataManager.completeTasks(addedIds.subList(0, TASKS_PER_LIST));
+        dataManager.flush();
+    }
+
+    @After
+    public void removeTasks() {
+        dataManager.deleteTasks(addedIds);
+        dataManager.flush();
+    }
+
+    @Test
+    public void reportsTimeToFirstFrameWhenSwitchingTabs() throws InterruptedException {
+        try (ActivityScenario<MainActivity> scenario = ActivityScenario.launch(MainActivity.class)) {
+            // Let both lists come up once so class loading and the first queries are not measured.
+            switchTo(scenario, R.id.completedTasksFragment, R.id.completed_tasks_recycler_view);
+            switchTo(scenario, R.id.tasksFragment, R.id.tasks_recycler_view);
+
+            long[] own = new long[ROUNDS];
+            long[] shared = new long[ROUNDS];
+            for (int round = 0; round < ROUNDS; round++) {
+                own[round] = switchBackAndForth(scenario, false);
+                shared[round] = switchBackAndForth(scenario, true);
+            }
+
+            Log.i(TAG, String.format("Tab switch to first frame, median of %d: own pool %.2f ms, shared pool %.2f ms",
+                    ROUNDS, median(own) / 1e6, median(shared) / 1e6));
+            assertTrue(median(shared) > 0);
+        }
+    }
+
+    // Sets the pool mode up on the tasks tab, so the list being left already follows it.
+    private static long switchBackAndForth(ActivityScenario<MainActivity> scenario, boolean shared)
+            throws InterruptedException {
+        scenario.onActivity(activity -> activity.getTaskRowPool().setShared(shared));
+        switchTo(scenario, R.id.completedTasksFragment, R.id.completed_tasks_recycler_view);
+        switchTo(scenario, R.id.tasksFragment, R.id.tasks_recycler_view);
+        return switchTo(scenario, R.id.completedTasksFragment, R.id.completed_tasks_recycler_view);
+    }
+
+    private static long switchTo(ActivityScenario<MainActivity> scenario, int tabId, int listId)
+            throws InterruptedException {
+        CountDownLatch drawn = new CountDownLatch(1);
+        long[] elapsed = new long[1];
+        scenario.onActivity(activity -> {
+            View decor = activity.getWindow().getDecorView();
+            long start = SystemClock.elapsedRealtimeNanos();
+            decor.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
+                @Override
+                public boolean onPreDraw() {
+                    RecyclerView list = activity.findViewById(listId);
+                    if (list != null && list.isShown() && list.getChildCount() > 0) {
+                        elapsed[0] = SystemClock.elapsedRealtimeNanos() - start;
+                        decor.getViewTreeObserver().removeOnPreDrawListener(this);
+                        drawn.countDown();
+                    }
+                    return true;
+                }
+            });
+            BottomNavigationView navigation = activity.findViewById(R.id.bottom_nav_view);
+            navigation.setSelectedItemId(tabId);
+        });
+        assertTrue("list not drawn", drawn.await(5, TimeUnit.SECONDS));
+        InstrumentationRegistry.getInstrumentation().waitForIdleSync();
+        return elapsed[0];
+    }
+
+    private static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
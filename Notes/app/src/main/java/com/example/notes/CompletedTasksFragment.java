@@ -11,15 +11,20 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.floatingactionbutton.FloatingActionButton;
-import java.util.List;
 
-public class CompletedTasksFragment extends Fragment implements TaskAdapter.OnTaskClickListener {
+public class CompletedTasksFragment extends Fragment implements TaskAdapter.OnTaskClickListener,
+        DataManager.ChangeListener {
+
+    private static final String KEY_SELECTION_MODE = "selection_mode";
+    private static final String KEY_SELECT_ALL = "select_all";
+    private static final String KEY_TOGGLED_IDS = "toggled_ids";
 
     private RecyclerView recyclerView;
     private TaskAdapter adapter;
-    private FloatingActionButton fabDelete;
+    private FloatingActionButton fabDelete, fabSelectAll;
     private LinearLayout selectionToolbar;
     private DataManager dataManager;
+    private TaskListLoader listLoader;
 
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, ViewGroup container,
@@ -30,30 +35,73 @@ public class CompletedTasksFragment extends Fragment implements TaskAdapter.OnTa
 
         recyclerView = view.findViewById(R.id.completed_tasks_recycler_view);
         fabDelete = view.findViewById(R.id.fab_delete);
+        fabSelectAll = view.findViewById(R.id.fab_select_all);
         selectionToolbar = view.findViewById(R.id.selection_toolbar);
 
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
 
-        adapter = new TaskAdapter(dataManager.getCompletedTasks(), this);
+        // A recreated fragment, also after process death, keeps the selection; a new one starts without.
+        TaskSelection selection = savedInstanceState == null ? new TaskSelection()
+                : TaskSelection.restore(savedInstanceState.getBoolean(KEY_SELECT_ALL),
+                        savedInstanceState.getStringArrayList(KEY_TOGGLED_IDS));
+        adapter = new TaskAdapter(selection, this);
         recyclerView.setAdapter(adapter);
+        ((MainActivity) requireActivity()).getTaskRowPool().attach(recyclerView);
+        listLoader = new TaskListLoader(dataManager, true, adapter);
+        listLoader.attach(recyclerView);
+        listLoader.attachSearch(view.findViewById(R.id.search_edit_text));
+        listLoader.reload();
+        dataManager.addChangeListener(this);
 
         fabDelete.setOnClickListener(v -> deleteSelectedTasks());
+        fabSelectAll.setOnClickListener(v -> adapter.selectAll());
+
+        if (savedInstanceState != null && savedInstanceState.getBoolean(KEY_SELECTION_MODE)) {
+            adapter.setSelectionMode(true);
+            updateSelectionUI();
+        }
 
         return view;
     }
 
     @Override
-    public void onTaskClick(int position) {
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (adapter != null) {
+            outState.putBoolean(KEY_SELECTION_MODE, adapter.isSelectionMode());
+            outState.putBoolean(KEY_SELECT_ALL, adapter.getSelection().isAll());
+            outState.putStringArrayList(KEY_TOGGLED_IDS, adapter.getSelection().toggledIds());
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        dataManager.removeChangeListener(this);
+    }
+
+    // Also how the list picks up this screen's own edits, once they are written.
+    @Override
+    public void onTasksChanged() {
+        listLoader.reload();
+    }
+
+    @Override
+    public void onTaskClick(String taskId) {
         if (adapter.isSelectionMode()) {
-            adapter.toggleSelection(position);
+            adapter.toggleSelection(taskId);
             updateSelectionUI();
         }
     }
 
     @Override
-    public void onTaskLongClick(int position) {
-        adapter.setSelectionMode(true);
-        adapter.toggleSelection(position);
+    public void onTaskLongClick(String taskId) {
+        if (adapter.isSelectionMode()) {
+            adapter.selectRange(taskId);
+        } else {
+            adapter.setSelectionMode(true);
+            adapter.toggleSelection(taskId);
+        }
         updateSelectionUI();
     }
 
@@ -66,17 +114,18 @@ public class CompletedTasksFragment extends Fragment implements TaskAdapter.OnTa
     }
 
     private void deleteSelectedTasks() {
-        List<Integer> selectedPositions = adapter.getSelectedPositions();
-        if (selectedPositions.isEmpty()) {
-            Toast.makeText(getContext(), "Выберите задачи", Toast.LENGTH_SHORT).show();
-            return;
-        }
-
-        dataManager.deleteCompletedTasks(selectedPositions);
-        adapter.updateTasks(dataManager.getCompletedTasks());
-        adapter.setSelectionMode(false);
-        updateSelectionUI();
+        listLoader.resolveSelection(adapter.getSelection(), selectedIds -> {
+            if (getView() == null) return;
+            if (selectedIds.isEmpty()) {
+                Toast.makeText(getContext(), "Выберите задачи", Toast.LENGTH_SHORT).show();
+                return;
+            }
+
+            dataManager.deleteTasks(selectedIds);
+            adapter.setSelectionMode(false);
+            updateSelectionUI();
 
-        Toast.makeText(getContext(), "Задачи удалены", Toast.LENGTH_SHORT).show();
+            Toast.makeText(getContext(), "Задачи удалены", Toast.LENGTH_SHORT).show();
+        });
     }
 }
\ No newline at end of file
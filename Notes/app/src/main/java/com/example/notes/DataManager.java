@@ -1,21 +1,116 @@
 package com.example.notes;
 
 import android.content.Context;
-import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.util.LruCache;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class DataManager {
+    private static final String TAG = "DataManager";
+    private static final int TASK_CACHE_CHARS = 1024 * 1024;
+
+    // The journaled file store stays selectable to compare against SQLite.
+    static final boolean USE_SQLITE_STORE = true;
+
+    public interface SearchCallback {
+        void onResults(List<TaskHeader> headers);
+    }
+
+    public interface TaskCallback {
+        void onTaskLoaded(Task task);
+    }
+
+    public interface ChangeListener {
+        /** Called on the main thread once changed tasks have been written, whoever changed them. */
+        void onTasksChanged();
+    }
+
     private static DataManager instance;
-    private List<Task> tasks;
-    private List<Task> completedTasks;
     private SharedPrefManager sharedPrefManager;
+    private TaskFileStore taskFileStore;
+    private volatile TaskStore store;
+    private final Future<?> storeOpened;
+    private ImageBlobStore imageBlobStore;
+    private ThumbnailStore thumbnailStore;
+    private WriteBehindScheduler writeScheduler;
+
+    // The search index is only touched on its own thread, so updates and queries stay in order.
+    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor();
+    // Reads of single tasks for the main thread.
+    private final ExecutorService readExecutor = Executors.newSingleThreadExecutor();
+    // Opens the store, then runs the sweeps and the thumbnail backfill one after another.
+    private final ExecutorService backgroundExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final List<ChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+    private TaskSearchIndex searchIndex;
+    private File searchIndexFile;
+    private File searchStaleMarker;
+    private boolean searchIndexMarkedStale;
+
+    // Full tasks are read on demand; recently opened ones stay in a cache bounded by text size.
+    private final LruCache<String, Task> taskCache = new LruCache<String, Task>(TASK_CACHE_CHARS) {
+        @Override
+        protected int sizeOf(String key, Task task) {
+            int size = 1;
+            if (task.getTitle() != null) size += task.getTitle().length();
+            if (task.getDescription() != null) size += task.getDescription().length();
+            return size;
+        }
+    };
+
+    // Tasks changed in memory whose ops have not reached the store yet.
+    private final Map<String, Task> pendingTasks = new HashMap<>();
+    // Deleted tasks that were only in the store; their image refs are read right before the
+    // delete is written, on the write-behind thread.
+    private final Set<String> unreadDeletes = new HashSet<>();
 
     private DataManager(Context context) {
         sharedPrefManager = new SharedPrefManager(context);
-        tasks = sharedPrefManager.getTasks();
-        completedTasks = sharedPrefManager.getCompletedTasks();
+        File storeDir = new File(context.getFilesDir(), "tasks");
+        taskFileStore = new TaskFileStore(storeDir);
+        imageBlobStore = ImageBlobStore.getInstance(context);
+        thumbnailStore = ThumbnailStore.getInstance(context);
+
+        Context app = context.getApplicationContext();
+        storeOpened = backgroundExecutor.submit(() -> openStore(app, storeDir));
+        writeScheduler = new WriteBehindScheduler(this::writeBatch);
+        // Reference counts changed by the edits of a batch, and by its callbacks, are saved with it.
+        writeScheduler.setAfterBatch(imageBlobStore::saveRefCounts);
+
+        searchIndexFile = new File(storeDir, "search.idx");
+        searchStaleMarker = new File(storeDir, "search.stale");
+        searchExecutor.execute(this::openSearchIndex);
+
+        backgroundExecutor.execute(() -> {
+            imageBlobStore.sweepOrphans(store().loadAllImageRefs());
+            thumbnailStore.sweepOrphans();
+        });
+        backgroundExecutor.execute(() -> {
+            TaskStore opened = store();
+            if (opened instanceof SqliteTaskStore && ((SqliteTaskStore) opened).refreshStalePreviews() > 0) {
+                notifyChanged();
+            }
+        });
+        backgroundExecutor.execute(new ThumbnailBackfillJob(this, thumbnailStore, new File(storeDir, "thumbnails.state")));
     }
 
     public static DataManager getInstance(Context context) {
@@ -25,61 +120,363 @@ public class DataManager {
         return instance;
     }
 
-    public List<Task> getTasks() {
-        return tasks;
+    // On first launch this migrates the old storage and imports it into SQLite, which can take
+    // a while, so it runs on the background executor.
+    private void openStore(Context context, File storeDir) {
+        SqliteTaskStore sqliteStore = USE_SQLITE_STORE ? new SqliteTaskStore(context) : null;
+        if (sqliteStore != null && sqliteStore.isImported()) {
+            store = sqliteStore;
+            return;
+        }
+        migrateLegacyStorage();
+        JournaledTaskStore fileStore = new JournaledTaskStore(taskFileStore, new TaskJournal(storeDir));
+        if (sqliteStore != null) {
+            sqliteStore.importTasks(fileStore.loadAll(false), fileStore.loadAll(true));
+            store = sqliteStore;
+        } else {
+            store = fileStore;
+        }
     }
 
-    public List<Task> getCompletedTasks() {
-        return completedTasks;
+    // Reads and writes of the store wait here until it is open.
+    private TaskStore store() {
+        try {
+            storeOpened.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+        return store;
     }
 
-    public void addTask(Task task) {
-        tasks.add(0, task);
-        sharedPrefManager.saveTasks(tasks);
+    private void migrateLegacyStorage() {
+        if (!taskFileStore.hasIndex()) {
+            migrateLegacyTasks(sharedPrefManager.getTasks(), sharedPrefManager.getCompletedTasks());
+            if (sharedPrefManager.hasTasks()) {
+                sharedPrefManager.removeTasks();
+            }
+        } else {
+            TaskFileStore.Index index = taskFileStore.loadIndex();
+            if (index.isLegacy()) {
+                migrateLegacyTasks(taskFileStore.loadTasks(index.getLegacyTaskIds()),
+                        taskFileStore.loadTasks(index.getLegacyCompletedIds()));
+            }
+        }
     }
 
-    public void updateTask(int position, Task task) {
-        tasks.set(position, task);
-        sharedPrefManager.saveTasks(tasks);
+    private void migrateLegacyTasks(List<Task> legacyTasks, List<Task> legacyCompleted) {
+        List<NoteDocument> documents = new ArrayList<>();
+        for (List<Task> list : Arrays.asList(legacyTasks, legacyCompleted)) {
+            for (Task task : list) {
+                if (task.getDescription() != null) {
+                    task.setDocument(imageBlobStore.internInlineImages(task.getDocument()));
+                }
+                documents.add(task.getDocument());
+                taskFileStore.saveTask(task);
+            }
+        }
+        taskFileStore.saveIndex(legacyTasks, legacyCompleted);
+        imageBlobStore.rebuildRefCounts(documents);
+    }
+
+    // Lists read the store, so they are told to reload once the ops have reached it.
+    private void persist(List<TaskOp> ops, Collection<String> ids, Runnable afterPersist) {
+        List<String> touched = new ArrayList<>(ids);
+        writeScheduler.submit(ops, () -> {
+            unpin(touched);
+            if (afterPersist != null) {
+                afterPersist.run();
+            }
+            notifyChanged();
+        });
+    }
+
+    private void writeBatch(List<TaskOp> batch) throws IOException {
+        List<String> deleted = takeUnreadDeletes(batch);
+        List<String> refs = deleted.isEmpty() ? Collections.emptyList() : store().loadImageRefs(deleted);
+        store().apply(batch);
+        imageBlobStore.release(refs);
     }
 
-    public void deleteTasks(List<Integer> positions) {
-        List<Integer> sortedPositions = new ArrayList<>(positions);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            sortedPositions.sort((a, b) -> b - a);
+    private synchronized List<String> takeUnreadDeletes(List<TaskOp> batch) {
+        List<String> ids = new ArrayList<>();
+        if (unreadDeletes.isEmpty()) return ids;
+        for (TaskOp op : batch) {
+            if (op.getType() == TaskOp.Type.DELETE && unreadDeletes.remove(op.getTaskId())) {
+                ids.add(op.getTaskId());
+            }
         }
+        return ids;
+    }
+
+    public void flush() {
+        writeScheduler.flush();
+        searchExecutor.execute(this::saveSearchIndex);
+        Log.d(TAG, "Persistence: " + writeScheduler.getStats());
+    }
+
+    public WriteBehindScheduler.Stats getPersistenceStats() {
+        return writeScheduler.getStats();
+    }
 
-        for (int position : sortedPositions) {
-            tasks.remove(position);
+    private synchronized void pin(Task task) {
+        pendingTasks.put(task.getId(), task);
+    }
+
+    private synchronized void unpin(Collection<String> ids) {
+        for (String id : ids) {
+            if (writeScheduler.isPending(id)) continue;
+            Task task = pendingTasks.remove(id);
+            if (task != null) {
+                taskCache.put(id, task);
+            }
         }
-        sharedPrefManager.saveTasks(tasks);
     }
 
-    public void completeTasks(List<Integer> positions) {
-        List<Integer> sortedPositions = new ArrayList<>(positions);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            sortedPositions.sort((a, b) -> b - a);
+    private synchronized void forget(String id) {
+        pendingTasks.remove(id);
+        taskCache.remove(id);
+    }
+
+    // A marker file exists while the saved index is behind, so a crash before the next save
+    // leads to a rebuild instead of stale results.
+    private void openSearchIndex() {
+        if (searchIndexFile.exists() && !searchStaleMarker.exists()) {
+            try {
+                searchIndex = TaskSearchIndex.load(searchIndexFile);
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
         }
+        searchIndex = new TaskSearchIndex();
+        List<Task> all = new ArrayList<>(store().loadAll(false));
+        all.addAll(store().loadAll(true));
+        searchIndex.rebuild(all);
+        saveSearchIndex();
+    }
 
-        for (int position : sortedPositions) {
-            Task task = tasks.get(position);
-            task.setCompleted(true);
-            completedTasks.add(0, task);
-            tasks.remove(position);
+    private void saveSearchIndex() {
+        if (!searchIndex.isDirty()) return;
+        try {
+            searchIndex.save(searchIndexFile);
+            searchStaleMarker.delete();
+            searchIndexMarkedStale = false;
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void updateSearchIndex(Runnable update) {
+        searchExecutor.execute(() -> {
+            if (!searchIndexMarkedStale) {
+                try {
+                    searchStaleMarker.createNewFile();
+                    searchIndexMarkedStale = true;
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+            update.run();
+        });
+    }
+
+    /**
+     * Prefix search over titles and description text of one list. Runs on a background thread;
+     * the headers, in list order, are delivered on the main thread.
+     */
+    public void search(boolean completed, String query, SearchCallback callback) {
+        searchExecutor.execute(() -> {
+            Set<String> ids = searchIndex.search(completed, query);
+            List<TaskHeader> headers = new ArrayList<>();
+            if (!ids.isEmpty()) {
+                headers = store().loadHeaders(completed, ids);
+            }
+            List<TaskHeader> results = headers;
+            mainHandler.post(() -> callback.onResults(results));
+        });
+    }
+
+    // List reads see the store as it is, without waiting for buffered writes; every written
+    // batch is followed by onTasksChanged, so a list catches up once an edit is persisted.
+    public int getTaskCount() {
+        return store().count(false);
+    }
+
+    public int getCompletedTaskCount() {
+        return store().count(true);
+    }
+
+    /** Headers of one list, newest first, following {@code after} (null for the first page). */
+    public List<TaskHeader> loadPage(boolean completed, TaskHeader after, int limit) {
+        return store().loadPage(completed, after, limit);
+    }
+
+    /** Headers of one list from position {@code offset}; prefer {@link #loadPage} when a row before is known. */
+    public List<TaskHeader> loadRange(boolean completed, int offset, int limit) {
+        return store().loadRange(completed, offset, limit);
+    }
+
+    /**
+     * The task as it is now. A task not in memory is read from the store on the calling thread,
+     * so on the main thread use {@link #loadTask} instead.
+     */
+    public Task getTask(String id) {
+        Task task = getLoadedTask(id);
+        if (task != null) return task;
+        task = store().getTask(id);
+        if (task == null) return null;
+        synchronized (this) {
+            // Edited or read by another thread while this one was reading.
+            Task loaded = getLoadedTask(id);
+            if (loaded != null) return loaded;
+            taskCache.put(id, task);
+        }
+        return task;
+    }
+
+    /** Delivers the task, or null when it is gone, on the main thread; reads the store in the background. */
+    public void loadTask(String id, TaskCallback callback) {
+        Task task = getLoadedTask(id);
+        if (task != null) {
+            callback.onTaskLoaded(task);
+            return;
         }
-        sharedPrefManager.saveTasks(tasks);
-        sharedPrefManager.saveCompletedTasks(completedTasks);
+        readExecutor.execute(() -> {
+            Task read = getTask(id);
+            mainHandler.post(() -> callback.onTaskLoaded(read));
+        });
+    }
+
+    private synchronized Task getLoadedTask(String id) {
+        Task task = pendingTasks.get(id);
+        return task != null ? task : taskCache.get(id);
+    }
+
+    public void addTask(Task task) {
+        imageBlobStore.retain(task.getDocument().imageRefs());
+        thumbnailStore.ensure(task.getDocument().firstImageRef());
+        pin(task);
+        updateSearchIndex(() -> searchIndex.put(task));
+        persist(Collections.singletonList(TaskOp.add(task)), Collections.singletonList(task.getId()), null);
     }
 
-    public void deleteCompletedTasks(List<Integer> positions) {
-        List<Integer> sortedPositions = new ArrayList<>(positions);
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
-            sortedPositions.sort((a, b) -> b - a);
+    /**
+     * Adds many tasks at once, for imports and restores. No screen offers an import yet;
+     * TabSwitchBenchmark fills the lists through it. The given tasks are copied and left as
+     * they are: each copy gets a fresh id and is added on top in the given order, as if added
+     * one by one. All of them go to the store as one batch, and listeners are told once it is
+     * written. Returns the new ids without waiting for the write; call {@link #flush()} to wait.
+     */
+    public List<String> importTasks(Iterable<Task> imported) {
+        List<Task> added = new ArrayList<>();
+        List<TaskOp> ops = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        List<String> refs = new ArrayList<>();
+        for (Task source : imported) {
+            Task task = new Task(source.getTitle(), source.getDescription());
+            task.setCompleted(source.isCompleted());
+            task.setCreatedAt(source.getCreatedAt());
+            task.setImageUri(source.getImageUri());
+            if (task.getDescription() != null) {
+                task.setDocument(imageBlobStore.internInlineImages(task.getDocument()));
+            }
+            refs.addAll(task.getDocument().imageRefs());
+            thumbnailStore.ensure(task.getDocument().firstImageRef());
+            pin(task);
+            added.add(task);
+            ops.add(TaskOp.add(task));
+            ids.add(task.getId());
         }
+        if (added.isEmpty()) return ids;
 
-        for (int position : sortedPositions) {
-            completedTasks.remove(position);
+        imageBlobStore.retain(refs);
+        updateSearchIndex(() -> {
+            for (Task task : added) searchIndex.put(task);
+        });
+        persist(ops, ids, null);
+        return ids;
+    }
+
+    public void addChangeListener(ChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    public void removeChangeListener(ChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private void notifyChanged() {
+        mainHandler.post(() -> {
+            for (ChangeListener listener : changeListeners) {
+                listener.onTasksChanged();
+            }
+        });
+    }
+
+    // A description still stored as HTML counts as changed, so saving the note moves it over.
+    public void updateTask(String id, String title, NoteDocument document) {
+        Task task = getTask(id);
+        if (task == null) return;
+        Set<String> oldRefs = task.getDocument().imageRefs();
+        boolean descriptionChanged = !Objects.equals(task.getDescription(), document.encode());
+        task.setTitle(title);
+        task.setDocument(document);
+
+        imageBlobStore.retain(document.imageRefs());
+        if (descriptionChanged) {
+            thumbnailStore.ensure(document.firstImageRef());
+        }
+        pin(task);
+        updateSearchIndex(() -> searchIndex.put(task));
+        persist(Collections.singletonList(TaskOp.update(task, descriptionChanged)), Collections.singletonList(id),
+                () -> imageBlobStore.release(oldRefs));
+    }
+
+    public void completeTasks(Collection<String> ids) {
+        List<TaskOp> ops = new ArrayList<>();
+        for (String id : ids) {
+            markCompleted(id);
+            ops.add(TaskOp.complete(id));
+        }
+        List<String> completedIds = new ArrayList<>(ids);
+        updateSearchIndex(() -> {
+            for (String id : completedIds) searchIndex.setCompleted(id);
+        });
+        persist(ops, ids, null);
+    }
+
+    /**
+     * Deletes tasks from either list. The image refs of tasks not changed in memory are read
+     * from the store on the write-behind thread, so deleting thousands does not load them here.
+     */
+    public void deleteTasks(Collection<String> ids) {
+        List<TaskOp> ops = new ArrayList<>();
+        List<String> refs = new ArrayList<>();
+        synchronized (this) {
+            for (String id : ids) {
+                Task pending = pendingTasks.get(id);
+                if (pending != null) {
+                    refs.addAll(pending.getDocument().imageRefs());
+                } else {
+                    unreadDeletes.add(id);
+                }
+                forget(id);
+                ops.add(TaskOp.delete(id));
+            }
+        }
+        List<String> deletedIds = new ArrayList<>(ids);
+        updateSearchIndex(() -> {
+            for (String id : deletedIds) searchIndex.remove(id);
+        });
+        persist(ops, ids, () -> imageBlobStore.release(refs));
+    }
+
+    private synchronized void markCompleted(String id) {
+        Task task = getLoadedTask(id);
+        if (task != null) {
+            task.setCompleted(true);
         }
-        sharedPrefManager.saveCompletedTasks(completedTasks);
     }
-}
\ No newline at end of file
+}
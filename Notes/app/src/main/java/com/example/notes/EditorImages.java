@@ -0,0 +1,187 @@
+package com.example.notes;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The images of one editor. Each ref gets one {@link LazyImageDrawable}, sized from the blob's
+ * dimensions without decoding it. {@link #show} is given the refs near the viewport: those are
+ * decoded in the background, in order, while their decoded size fits the budget, and every
+ * other bitmap is released. All calls happen on the main thread.
+ */
+class EditorImages {
+    static final long BUDGET_BYTES = Math.min(Runtime.getRuntime().maxMemory() / 8, 24L * 1024 * 1024);
+    private static final int BYTES_PER_PIXEL = 4;
+    private static final ExecutorService DECODE_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    interface ResolveCallback {
+        /** Maps each ref asked for to the ref it is stored under. */
+        void onResolved(Map<String, String> refs);
+    }
+
+    private final ImageBlobStore blobStore;
+    private final long budget;
+    private final Runnable onImageChanged;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, LazyImageDrawable> drawables = new HashMap<>();
+    // Bytes of the bitmaps held and of the decodes queued.
+    private long usedBytes;
+    private int maxWidth = 300;
+
+    /** {@code onImageChanged} redraws the editor; spans do not pass drawable invalidation on. */
+    EditorImages(ImageBlobStore blobStore, long budget, Runnable onImageChanged) {
+        this.blobStore = blobStore;
+        this.budget = budget;
+        this.onImageChanged = onImageChanged;
+    }
+
+    LazyImageDrawable drawableFor(String ref) {
+        LazyImageDrawable drawable = drawables.get(ref);
+        if (drawable == null) {
+            int[] size = NoteMarkup.isHash(ref) ? blobStore.dimensions(ref) : null;
+            drawable = size != null ? new LazyImageDrawable(ref, size[0], size[1]) : new LazyImageDrawable(ref, 0, 0);
+            drawable.fit(maxWidth);
+            drawables.put(ref, drawable);
+        }
+        return drawable;
+    }
+
+    /**
+     * Stores inline image sources as blobs and reads every image's dimensions in the
+     * background, so that {@link #drawableFor} finds them cached once the callback runs.
+     */
+    void resolve(Collection<String> refs, ResolveCallback callback) {
+        List<String> pending = new ArrayList<>(refs);
+        DECODE_EXECUTOR.execute(() -> {
+            Map<String, String> resolved = new HashMap<>();
+            for (String ref : pending) {
+                String stored = ref;
+                try {
+                    String hash = blobStore.putInline(ref);
+                    if (hash != null) stored = hash;
+                } catch (IOException | IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+                if (NoteMarkup.isHash(stored)) blobStore.dimensions(stored);
+                resolved.put(ref, stored);
+            }
+            mainHandler.post(() -> callback.onResolved(resolved));
+        });
+    }
+
+    /** Stands in for an image that is still being read. */
+    LazyImageDrawable placeholder() {
+        LazyImageDrawable drawable = new LazyImageDrawable(null, 0, 0);
+        drawable.fit(maxWidth);
+        return drawable;
+    }
+
+    /** Shows a bitmap that was just stored as is, instead of decoding the blob again. */
+    LazyImageDrawable adopt(String ref, Bitmap bitmap) {
+        LazyImageDrawable drawable = drawableFor(ref);
+        if (drawable.getBitmap() != null) {
+            bitmap.recycle();
+            return drawable;
+        }
+        release(drawable);
+        drawable.reservedBytes = bitmap.getByteCount();
+        usedBytes += drawable.reservedBytes;
+        drawable.setBitmap(bitmap);
+        return drawable;
+    }
+
+    void setMaxWidth(int maxWidth) {
+        this.maxWidth = maxWidth;
+    }
+
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Decodes the images of {@code nearRefs}, in order, while they fit the budget and releases
+     * every other bitmap. Images that do not fit stay placeholders until others are released.
+     */
+    void show(Collection<String> nearRefs) {
+        for (LazyImageDrawable drawable : drawables.values()) {
+            if (!nearRefs.contains(drawable.ref)) release(drawable);
+        }
+        for (String ref : nearRefs) {
+            LazyImageDrawable drawable = drawables.get(ref);
+            if (drawable == null || drawable.getBitmap() != null || drawable.loading || !drawable.hasKnownSize()) {
+                continue;
+            }
+            long bytes = decodedBytes(drawable.getImageWidth(), drawable.getImageHeight(), maxWidth);
+            if (usedBytes + bytes > budget) break;
+            load(drawable, bytes);
+        }
+    }
+
+    void releaseAll() {
+        for (LazyImageDrawable drawable : drawables.values()) {
+            release(drawable);
+        }
+    }
+
+    private void load(LazyImageDrawable drawable, long bytes) {
+        drawable.loading = true;
+        drawable.reservedBytes = bytes;
+        usedBytes += bytes;
+        int generation = ++drawable.generation;
+        String path = blobStore.file(drawable.ref).getAbsolutePath();
+        int sampleSize = sampleSize(drawable.getImageWidth(), drawable.getImageHeight(), maxWidth);
+        DECODE_EXECUTOR.execute(() -> {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+            mainHandler.post(() -> {
+                // Released, or released and asked for again, while this one was decoding.
+                if (drawable.generation != generation) {
+                    if (bitmap != null) bitmap.recycle();
+                    return;
+                }
+                drawable.loading = false;
+                long actual = bitmap != null ? bitmap.getByteCount() : 0;
+                usedBytes += actual - drawable.reservedBytes;
+                drawable.reservedBytes = actual;
+                drawable.setBitmap(bitmap);
+                onImageChanged.run();
+            });
+        });
+    }
+
+    private void release(LazyImageDrawable drawable) {
+        if (!drawable.loading && drawable.getBitmap() == null) return;
+        drawable.generation++;
+        usedBytes -= drawable.reservedBytes;
+        drawable.reservedBytes = 0;
+        drawable.loading = false;
+        Bitmap bitmap = drawable.getBitmap();
+        drawable.setBitmap(null);
+        if (bitmap != null) bitmap.recycle();
+    }
+
+    /** The power-of-two sample size that still covers {@code maxWidth}. */
+    static int sampleSize(int width, int height, int maxWidth) {
+        return ThumbnailDecoder.sampleSize(width, height, maxWidth, 1);
+    }
+
+    /** What decoding an image for {@code maxWidth} costs, before any exact scaling. */
+    static long decodedBytes(int width, int height, int maxWidth) {
+        int sampleSize = sampleSize(width, height, maxWidth);
+        long sampledWidth = (width + sampleSize - 1) / sampleSize;
+        long sampledHeight = (height + sampleSize - 1) / sampleSize;
+        return sampledWidth * sampledHeight * BYTES_PER_PIXEL;
+    }
+}
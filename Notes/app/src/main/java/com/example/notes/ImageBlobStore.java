@@ -0,0 +1,372 @@
+package com.example.notes;
+
+import android.content.Context;
+import android.graphics.BitmapFactory;
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * App-private image storage keyed by the SHA-256 of the image bytes. Notes reference
+ * images by hash (see {@link NoteDocument}), so identical images are stored once.
+ * Blobs are reference counted per task and deleted when the last task drops them. Counts
+ * change in memory and are written by {@link #saveRefCounts()}, which the task writes call
+ * once per batch. The counts file can fall behind the tasks, so nothing is deleted just for
+ * missing from it: the orphan sweep is given the refs of the stored tasks.
+ */
+public class ImageBlobStore {
+    public static final String REF_PREFIX = "blob:";
+
+    private static final String DIR_NAME = "images";
+    private static final String REFS_FILE = "refs.json";
+    private static final long ORPHAN_GRACE_MS = 60 * 60 * 1000;
+    private static final String INLINE_PREFIX = "data:image/";
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final int MAX_DIMENSIONS = 1024;
+
+    /** Writes a blob's bytes as they are produced, e.g. straight from Bitmap.compress. */
+    public interface BlobSource {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    private static ImageBlobStore instance;
+
+    private final File dir;
+    private final Gson gson = new Gson();
+    private Map<String, Integer> refCounts;
+    private boolean refCountsChanged;
+    // False when refs.json was missing or unreadable, so the counts must come from the tasks.
+    private boolean refCountsLoaded;
+    // Blobs never change, so their dimensions are read once; the least recently used go first.
+    private final Map<String, int[]> dimensions = new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_DIMENSIONS;
+        }
+    };
+
+    ImageBlobStore(File dir) {
+        this.dir = dir;
+        dir.mkdirs();
+        refCounts = loadRefCounts();
+    }
+
+    public static synchronized ImageBlobStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ImageBlobStore(new File(context.getApplicationContext().getFilesDir(), DIR_NAME));
+        }
+        return instance;
+    }
+
+    public static String imageTag(String hash) {
+        return "<img src=\"" + REF_PREFIX + hash + "\" style=\"max-width:100%;\" />";
+    }
+
+    public static boolean hasInlineImages(NoteDocument document) {
+        for (int i = 0; i < document.size(); i++) {
+            if (document.type(i) == NoteDocument.IMAGE_SOURCE && document.value(i).startsWith(INLINE_PREFIX)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static boolean isInline(String source) {
+        return source != null && source.startsWith(INLINE_PREFIX) && source.contains(";base64,");
+    }
+
+    public File file(String hash) {
+        return new File(dir, hash);
+    }
+
+    /** Width and height of a blob image, read from its header; null if it cannot be read. */
+    public int[] dimensions(String hash) {
+        int[] size;
+        synchronized (dimensions) {
+            size = dimensions.get(hash);
+        }
+        if (size != null) return size;
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file(hash).getAbsolutePath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        size = new int[]{bounds.outWidth, bounds.outHeight};
+        rememberDimensions(hash, size[0], size[1]);
+        return size;
+    }
+
+    /** Records the dimensions of a blob just written from a bitmap of that size. */
+    public void rememberDimensions(String hash, int width, int height) {
+        synchronized (dimensions) {
+            dimensions.put(hash, new int[]{width, height});
+        }
+    }
+
+    /**
+     * Streams a blob into a temp file through a fixed-size buffer, hashing it on the way, and
+     * moves it to its hash. The bytes are never held in memory as a whole; if an identical
+     * blob already exists the new copy is dropped.
+     */
+    public String put(BlobSource source) throws IOException {
+        MessageDigest digest = newDigest();
+        File tmp = File.createTempFile("put", ".tmp", dir);
+        try {
+            try (OutputStream out = new DigestOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(tmp), BUFFER_SIZE), digest)) {
+                source.writeTo(out);
+            }
+            String hash = hex(digest.digest());
+            File target = file(hash);
+            if (!target.exists() && !tmp.renameTo(target) && !target.exists()) {
+                throw new IOException("Could not store blob " + hash);
+            }
+            return hash;
+        } finally {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * Stores an inline {@code data:image/...;base64,} source, decoding it a buffer at a time
+     * without copying the base64 text first. Returns null for any other source.
+     */
+    public String putInline(String source) throws IOException {
+        if (!isInline(source)) return null;
+        int start = source.indexOf(";base64,") + ";base64,".length();
+        return put(out -> decodeBase64(source, start, out));
+    }
+
+    /**
+     * Decodes base64 text from {@code start} into {@code out} through one small buffer. Line
+     * breaks and spaces are skipped and decoding stops at padding, like Base64.DEFAULT; other
+     * characters are an IllegalArgumentException. Done by hand because java.util.Base64 needs
+     * API 26, and android.util.Base64 does not run in JVM tests.
+     */
+    static void decodeBase64(CharSequence text, int start, OutputStream out) throws IOException {
+        byte[] chunk = new byte[BUFFER_SIZE];
+        int n = 0;
+        int bits = 0;
+        int sextets = 0;
+        for (int i = start, length = text.length(); i < length; i++) {
+            char c = text.charAt(i);
+            int value = base64Value(c);
+            if (value < 0) {
+                if (c == '=') break;
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') continue;
+                throw new IllegalArgumentException("bad base-64 at " + i);
+            }
+            bits = bits << 6 | value;
+            if (++sextets == 4) {
+                chunk[n++] = (byte) (bits >> 16);
+                chunk[n++] = (byte) (bits >> 8);
+                chunk[n++] = (byte) bits;
+                bits = 0;
+                sextets = 0;
+                if (n > chunk.length - 3) {
+                    out.write(chunk, 0, n);
+                    n = 0;
+                }
+            }
+        }
+        if (sextets == 1) {
+            throw new IllegalArgumentException("bad base-64 length");
+        } else if (sextets == 2) {
+            chunk[n++] = (byte) (bits >> 4);
+        } else if (sextets == 3) {
+            chunk[n++] = (byte) (bits >> 10);
+            chunk[n++] = (byte) (bits >> 2);
+        }
+        out.write(chunk, 0, n);
+    }
+
+    private static int base64Value(char c) {
+        if (c >= 'A' && c <= 'Z') return c - 'A';
+        if (c >= 'a' && c <= 'z') return c - 'a' + 26;
+        if (c >= '0' && c <= '9') return c - '0' + 52;
+        if (c == '+') return 62;
+        if (c == '/') return 63;
+        return -1;
+    }
+
+    /** Replaces legacy inline base64 images with blob references. */
+    public NoteDocument internInlineImages(NoteDocument document) {
+        if (!hasInlineImages(document)) return document;
+        NoteDocument.Builder result = new NoteDocument.Builder();
+        for (int i = 0; i < document.size(); i++) {
+            String value = document.value(i);
+            if (document.type(i) == NoteDocument.TEXT) {
+                result.text(value, 0, value.length());
+            } else if (document.type(i) == NoteDocument.IMAGE) {
+                result.image(value);
+            } else {
+                String hash = null;
+                try {
+                    hash = putInline(value);
+                } catch (IOException | IllegalArgumentException e) {
+                    e.printStackTrace();
+                }
+                if (hash != null) {
+                    result.image(hash);
+                } else {
+                    result.imageSource(value);
+                }
+            }
+        }
+        return result.build();
+    }
+
+    public synchronized void retain(Collection<String> hashes) {
+        if (hashes.isEmpty()) return;
+        for (String hash : hashes) {
+            Integer count = refCounts.get(hash);
+            refCounts.put(hash, count == null ? 1 : count + 1);
+        }
+        refCountsChanged = true;
+    }
+
+    public synchronized void release(Collection<String> hashes) {
+        if (hashes.isEmpty()) return;
+        for (String hash : hashes) {
+            Integer count = refCounts.get(hash);
+            if (count == null) {
+                // Never counted, e.g. lost with the counts file; the sweep decides about it.
+                continue;
+            } else if (count <= 1) {
+                refCounts.remove(hash);
+                file(hash).delete();
+            } else {
+                refCounts.put(hash, count - 1);
+            }
+        }
+        refCountsChanged = true;
+    }
+
+    /** Rebuilds every reference count from the given notes, one reference per task. */
+    public synchronized void rebuildRefCounts(Collection<NoteDocument> documents) {
+        refCounts = new HashMap<>();
+        for (NoteDocument document : documents) {
+            for (String hash : document.imageRefs()) {
+                Integer count = refCounts.get(hash);
+                refCounts.put(hash, count == null ? 1 : count + 1);
+            }
+        }
+        refCountsLoaded = true;
+        refCountsChanged = true;
+        saveRefCounts();
+    }
+
+    /**
+     * Deletes blobs no task references, e.g. images inserted into an editor that was then
+     * cancelled. {@code storedRefs} are the refs of the stored tasks, once per task; a blob in
+     * them or in the counts is kept, and so are recent files, so an editor that is still open
+     * does not lose them. Counts that were lost are first raised to what the tasks hold.
+     */
+    public synchronized void sweepOrphans(Collection<String> storedRefs) {
+        Map<String, Integer> stored = new HashMap<>();
+        for (String hash : storedRefs) {
+            Integer count = stored.get(hash);
+            stored.put(hash, count == null ? 1 : count + 1);
+        }
+        if (!refCountsLoaded) {
+            for (Map.Entry<String, Integer> entry : stored.entrySet()) {
+                Integer count = refCounts.get(entry.getKey());
+                if (count == null || count < entry.getValue()) {
+                    refCounts.put(entry.getKey(), entry.getValue());
+                }
+            }
+            refCountsLoaded = true;
+            refCountsChanged = true;
+            saveRefCounts();
+        }
+
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long cutoff = System.currentTimeMillis() - ORPHAN_GRACE_MS;
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(REFS_FILE) || refCounts.containsKey(name) || stored.containsKey(name)) continue;
+            if (file.lastModified() < cutoff) {
+                file.delete();
+            }
+        }
+    }
+
+    private Map<String, Integer> loadRefCounts() {
+        File file = new File(dir, REFS_FILE);
+        if (!file.exists()) return new HashMap<>();
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<HashMap<String, Integer>>() {}.getType();
+            Map<String, Integer> counts = gson.fromJson(reader, type);
+            if (counts == null) return new HashMap<>();
+            refCountsLoaded = true;
+            return counts;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return new HashMap<>();
+        }
+    }
+
+    /**
+     * Writes the reference counts if they changed since the last save. The new file replaces
+     * the old one in a single rename, so there is always a whole file; if it fails the counts
+     * stay marked as changed for the next save.
+     */
+    public synchronized void saveRefCounts() {
+        if (!refCountsChanged) return;
+        File target = new File(dir, REFS_FILE);
+        File tmp = new File(dir, REFS_FILE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+            writer.write(gson.toJson(refCounts));
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tmp.renameTo(target)) {
+            new IOException("Could not replace " + target).printStackTrace();
+            return;
+        }
+        refCountsChanged = false;
+    }
+
+    static String sha256(byte[] bytes) {
+        return hex(newDigest().digest(bytes));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] hash) {
+        StringBuilder hex = new StringBuilder(hash.length * 2);
+        for (byte b : hash) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+}
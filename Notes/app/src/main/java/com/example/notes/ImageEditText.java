@@ -1,30 +1,55 @@
 package com.example.notes;
 
 import android.content.Context;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.text.Editable;
-import android.text.Spannable;
+import android.text.Layout;
 import android.text.SpannableStringBuilder;
+import android.text.Spanned;
+import android.text.TextWatcher;
 import android.text.style.ImageSpan;
 import android.util.AttributeSet;
-import android.util.Base64;
 import androidx.appcompat.widget.AppCompatEditText;
-import java.io.ByteArrayOutputStream;
-import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Edits a {@link NoteDocument}. Each image is one object-replacement character carrying a
+ * {@link NoteImageSpan} with the image's ref, so the spans are the only record of which
+ * images the text holds: deleting the character drops the image, and inserting one only adds
+ * a span at the cursor instead of rebuilding the text.
+ *
+ * <p>Spans take their size from the image dimensions up front; only images within a screen
+ * of the visible part are decoded, under {@link EditorImages#BUDGET_BYTES}, and the rest are
+ * released as the text scrolls.
+ */
 public class ImageEditText extends AppCompatEditText {
 
     private Context context;
-    private List<String> imageBase64List = new ArrayList<>();
-    private static final String IMAGE_MARKER = "[IMG]";
+    private ImageBlobStore imageBlobStore;
+    private ImageIngestor ingestor;
+    private EditorImages images;
+    private boolean imageUpdatePosted;
+    private static final String IMAGE_MARKER = "\uFFFC";
+
+    /**
+     * An image in the text: a blob hash, or the source of an image the blob store does not
+     * hold. A null ref marks a placeholder for an image still being read.
+     */
+    static class NoteImageSpan extends ImageSpan {
+        final String ref;
+
+        NoteImageSpan(Drawable drawable, String ref) {
+            super(drawable, ImageSpan.ALIGN_BASELINE);
+            this.ref = ref;
+        }
+    }
 
     public ImageEditText(Context context) {
         super(context);
@@ -45,181 +70,224 @@ public class ImageEditText extends AppCompatEditText {
     }
 
     private void init() {
+        imageBlobStore = ImageBlobStore.getInstance(context);
+        ingestor = new ImageIngestor(context, imageBlobStore);
+        images = new EditorImages(imageBlobStore, EditorImages.BUDGET_BYTES, this::invalidate);
         setTextSize(16);
         setPadding(16, 16, 16, 16);
-    }
-
-    public void insertImage(Uri imageUri) {
-        try {
-            InputStream inputStream = context.getContentResolver().openInputStream(imageUri);
-            Bitmap originalBitmap = BitmapFactory.decodeStream(inputStream);
-
-            if (originalBitmap == null) {
-                inputStream.close();
-                return;
+        addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
             }
 
-            int maxSize = 800;
-            int width = originalBitmap.getWidth();
-            int height = originalBitmap.getHeight();
-
-            Bitmap scaledBitmap;
-            if (width > height && width > maxSize) {
-                float ratio = (float) height / width;
-                scaledBitmap = Bitmap.createScaledBitmap(originalBitmap, maxSize, (int)(maxSize * ratio), true);
-            } else if (height > width && height > maxSize) {
-                float ratio = (float) width / height;
-                scaledBitmap = Bitmap.createScaledBitmap(originalBitmap, (int)(maxSize * ratio), maxSize, true);
-            } else {
-                scaledBitmap = originalBitmap;
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
             }
 
-            String base64 = bitmapToBase64(scaledBitmap);
-            imageBase64List.add(base64);
+            @Override
+            public void afterTextChanged(Editable s) {
+                postImageUpdate();
+            }
+        });
+    }
 
-            Editable editable = getText();
-            int cursorPos = getSelectionStart();
+    public void insertImage(Uri imageUri) {
+        insertImages(Collections.singletonList(imageUri));
+    }
 
-            if (cursorPos > 0 && editable.length() > 0) {
-                editable.insert(cursorPos, "\n");
-                cursorPos++;
-            }
+    /**
+     * Puts a placeholder for each image at the cursor right away, in order, and swaps each one
+     * for its image when {@link ImageIngestor} has stored it. A placeholder whose image could
+     * not be read is removed again.
+     */
+    public void insertImages(List<Uri> imageUris) {
+        if (imageUris.isEmpty()) return;
+        Editable editable = getText();
+        int cursorPos = Math.max(getSelectionStart(), 0);
+        SpannableStringBuilder inserted = new SpannableStringBuilder(cursorPos > 0 && editable.length() > 0 ? "\n" : "");
+        List<NoteImageSpan> placeholders = new ArrayList<>();
+        for (int i = 0; i < imageUris.size(); i++) {
+            NoteImageSpan placeholder = new NoteImageSpan(images.placeholder(), null);
+            int start = inserted.length();
+            inserted.append(IMAGE_MARKER).append("\n");
+            inserted.setSpan(placeholder, start, start + IMAGE_MARKER.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            placeholders.add(placeholder);
+        }
+        editable.insert(cursorPos, inserted);
 
-            String marker = IMAGE_MARKER + "\n";
-            editable.insert(cursorPos, marker);
+        for (int i = 0; i < imageUris.size(); i++) {
+            NoteImageSpan placeholder = placeholders.get(i);
+            ingestor.ingest(imageUris.get(i), result -> replacePlaceholder(placeholder, result));
+        }
+    }
 
-            replaceMarkersWithImages();
+    private void replacePlaceholder(NoteImageSpan placeholder, ImageIngestor.Result result) {
+        Editable text = getText();
+        int start = text.getSpanStart(placeholder);
+        int end = text.getSpanEnd(placeholder);
+        // Deleted while the image was being read.
+        if (start < 0) {
+            if (result != null) result.bitmap.recycle();
+            return;
+        }
 
-            if (scaledBitmap != originalBitmap && !scaledBitmap.isRecycled()) {
-                scaledBitmap.recycle();
-            }
-            if (!originalBitmap.isRecycled()) {
-                originalBitmap.recycle();
+        text.removeSpan(placeholder);
+        if (result != null) {
+            // The stored bitmap is what the blob decodes to, so it is shown as is. A detached
+            // editor has released its images and would not release this one again.
+            LazyImageDrawable drawable;
+            if (isAttachedToWindow()) {
+                drawable = images.adopt(result.hash, result.bitmap);
+            } else {
+                result.bitmap.recycle();
+                drawable = images.drawableFor(result.hash);
             }
-            inputStream.close();
-
-        } catch (Exception e) {
-            e.printStackTrace();
+            text.setSpan(new NoteImageSpan(drawable, result.hash), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        } else {
+            if (end < text.length() && text.charAt(end) == '\n') end++;
+            text.delete(start, end);
         }
     }
 
-    private String bitmapToBase64(Bitmap bitmap) {
-        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, byteArrayOutputStream);
-        byte[] byteArray = byteArrayOutputStream.toByteArray();
-        return Base64.encodeToString(byteArray, Base64.DEFAULT);
+    private int maxImageWidth() {
+        int maxWidth = getWidth() - getPaddingLeft() - getPaddingRight() - 32;
+        return maxWidth > 0 ? maxWidth : 300;
     }
 
-    private void replaceMarkersWithImages() {
-        String text = getText().toString();
-        SpannableStringBuilder builder = new SpannableStringBuilder(text);
-
-        int markerIndex = text.indexOf(IMAGE_MARKER);
-        int imageCount = 0;
-
-        while (markerIndex != -1 && imageCount < imageBase64List.size()) {
-            String base64 = imageBase64List.get(imageCount);
-            Bitmap bitmap = base64ToBitmap(base64);
-
-            if (bitmap != null) {
-                Drawable drawable = new BitmapDrawable(getResources(), bitmap);
-
-                int maxWidth = getWidth() - getPaddingLeft() - getPaddingRight() - 32;
-                if (maxWidth <= 0) maxWidth = 300;
-
-                int width = bitmap.getWidth();
-                int height = bitmap.getHeight();
-
-                if (width > maxWidth) {
-                    float ratio = (float) height / width;
-                    width = maxWidth;
-                    height = (int)(width * ratio);
-                }
-
-                drawable.setBounds(0, 0, width, height);
-
-                ImageSpan imageSpan = new ImageSpan(drawable, ImageSpan.ALIGN_BASELINE);
-
-                builder.setSpan(imageSpan, markerIndex, markerIndex + IMAGE_MARKER.length(),
-                        Spannable.SPAN_EXCLUSIVE_EXCLUSIVE);
-
-                imageCount++;
-            }
-
-            markerIndex = text.indexOf(IMAGE_MARKER, markerIndex + 1);
+    // Setting a span again over the same range makes the layout measure it again.
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        super.onSizeChanged(w, h, oldw, oldh);
+        if (w == oldw) return;
+        images.setMaxWidth(maxImageWidth());
+        Editable text = getText();
+        if (text == null) return;
+        for (NoteImageSpan span : text.getSpans(0, text.length(), NoteImageSpan.class)) {
+            ((LazyImageDrawable) span.getDrawable()).fit(maxImageWidth());
+            text.setSpan(span, text.getSpanStart(span), text.getSpanEnd(span), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
+        postImageUpdate();
+    }
 
-        setText(builder);
+    @Override
+    protected void onScrollChanged(int horiz, int vert, int oldHoriz, int oldVert) {
+        super.onScrollChanged(horiz, vert, oldHoriz, oldVert);
+        postImageUpdate();
     }
 
-    private Bitmap base64ToBitmap(String base64) {
-        try {
-            byte[] decodedBytes = Base64.decode(base64, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
-        } catch (Exception e) {
-            return null;
-        }
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        postImageUpdate();
     }
 
-    public String getHtmlContent() {
-        String text = getText().toString();
-        StringBuilder html = new StringBuilder();
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        images.releaseAll();
+    }
 
-        String[] lines = text.split("\n");
-        int imageIndex = 0;
+    // Scrolling and typing ask often; the images are looked at once per frame at most.
+    private void postImageUpdate() {
+        if (imageUpdatePosted || images == null) return;
+        imageUpdatePosted = true;
+        postOnAnimation(() -> {
+            imageUpdatePosted = false;
+            updateVisibleImages();
+        });
+    }
 
-        for (String line : lines) {
-            if (line.contains(IMAGE_MARKER)) {
-                String lineWithImages = line;
-                while (lineWithImages.contains(IMAGE_MARKER) && imageIndex < imageBase64List.size()) {
-                    String base64 = imageBase64List.get(imageIndex);
-                    String imgTag = "<img src=\"data:image/jpeg;base64," + base64 + "\" style=\"max-width:100%;\" />";
-                    lineWithImages = lineWithImages.replaceFirst(IMAGE_MARKER, imgTag);
-                    imageIndex++;
-                }
-                html.append(lineWithImages);
-            } else {
-                html.append(line);
+    private void updateVisibleImages() {
+        Layout layout = getLayout();
+        Editable text = getText();
+        if (layout == null || text == null || !isAttachedToWindow()) return;
+
+        int height = getHeight();
+        int top = getScrollY() - getTotalPaddingTop() - height;
+        int bottom = getScrollY() - getTotalPaddingTop() + 2 * height;
+        NoteImageSpan[] spans = text.getSpans(0, text.length(), NoteImageSpan.class);
+        Arrays.sort(spans, (a, b) -> Integer.compare(text.getSpanStart(a), text.getSpanStart(b)));
+
+        Set<String> near = new LinkedHashSet<>();
+        for (NoteImageSpan span : spans) {
+            if (span.ref == null) continue;
+            int line = layout.getLineForOffset(text.getSpanStart(span));
+            if (layout.getLineBottom(line) >= top && layout.getLineTop(line) <= bottom) {
+                near.add(span.ref);
             }
-            html.append("<br/>");
         }
+        images.show(near);
+    }
 
-        return html.toString();
+    public NoteDocument getDocument() {
+        Editable text = getText();
+        NoteImageSpan[] spans = text.getSpans(0, text.length(), NoteImageSpan.class);
+        Arrays.sort(spans, (a, b) -> Integer.compare(text.getSpanStart(a), text.getSpanStart(b)));
+
+        NoteDocument.Builder document = new NoteDocument.Builder();
+        int runStart = 0;
+        for (NoteImageSpan span : spans) {
+            int start = text.getSpanStart(span);
+            if (start < runStart) continue;
+            document.text(text, runStart, start);
+            // A placeholder whose image is not stored yet is left out.
+            if (span.ref != null && NoteMarkup.isHash(span.ref)) {
+                document.image(span.ref);
+            } else if (span.ref != null) {
+                document.imageSource(span.ref);
+            }
+            runStart = text.getSpanEnd(span);
+        }
+        document.text(text, runStart, text.length());
+        return document.build();
     }
 
-    public void setHtmlContent(String html) {
-        try {
-            imageBase64List.clear();
+    /**
+     * Shows the text at once with a placeholder per image. Inline images are stored and image
+     * dimensions read in the background, and then each placeholder still in the text is swapped
+     * for its image; the bitmaps are decoded once the text is laid out.
+     */
+    public void setDocument(NoteDocument document) {
+        if (document == null || document.isEmpty()) {
             setText("");
+            return;
+        }
 
-            if (html == null || html.isEmpty()) return;
-
-            Pattern pattern = Pattern.compile("src=\"data:image/jpeg;base64,([^\"]+)\"");
-            Matcher matcher = pattern.matcher(html);
-
-            while (matcher.find()) {
-                String base64 = matcher.group(1);
-                imageBase64List.add(base64);
+        SpannableStringBuilder text = new SpannableStringBuilder();
+        List<NoteImageSpan> placeholders = new ArrayList<>();
+        Set<String> refs = new LinkedHashSet<>();
+        for (int i = 0; i < document.size(); i++) {
+            String value = document.value(i);
+            if (document.type(i) == NoteDocument.TEXT) {
+                text.append(value);
+                continue;
             }
+            // The placeholder keeps the ref, so the document stays whole if saved before the swap.
+            NoteImageSpan placeholder = new NoteImageSpan(images.placeholder(), value);
+            int start = text.length();
+            text.append(IMAGE_MARKER);
+            text.setSpan(placeholder, start, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+            placeholders.add(placeholder);
+            refs.add(value);
+        }
+        setText(text);
+        if (!placeholders.isEmpty()) {
+            images.resolve(refs, resolved -> replacePlaceholders(placeholders, resolved));
+        }
+    }
 
-            String textWithMarkers = html
-                    .replaceAll("<img[^>]*>", IMAGE_MARKER)
-                    .replace("<br/>", "\n")
-                    .replace("<br>", "\n")
-                    .replaceAll("<[^>]*>", "")
-                    .replace("&amp;", "&")
-                    .replace("&lt;", "<")
-                    .replace("&gt;", ">")
-                    .replace("&quot;", "\"")
-                    .replace("&#39;", "'");
-
-            setText(textWithMarkers);
-
-            postDelayed(this::replaceMarkersWithImages, 100);
-
-        } catch (Exception e) {
-            e.printStackTrace();
-            setText(html.replaceAll("<[^>]*>", ""));
+    private void replacePlaceholders(List<NoteImageSpan> placeholders, Map<String, String> resolved) {
+        Editable text = getText();
+        if (text == null) return;
+        for (NoteImageSpan placeholder : placeholders) {
+            int start = text.getSpanStart(placeholder);
+            // Deleted, or the document was replaced, meanwhile.
+            if (start < 0) continue;
+            int end = text.getSpanEnd(placeholder);
+            String ref = resolved.get(placeholder.ref);
+            text.removeSpan(placeholder);
+            text.setSpan(new NoteImageSpan(images.drawableFor(ref), ref), start, end, Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
         }
+        postImageUpdate();
     }
-}
\ No newline at end of file
+}
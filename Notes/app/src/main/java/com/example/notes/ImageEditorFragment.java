@@ -1,13 +1,15 @@
 package com.example.notes;
 
 import android.content.ContentValues;
+import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.drawable.BitmapDrawable;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
 import android.os.Environment;
+import android.os.Handler;
+import android.os.Looper;
 import android.provider.MediaStore;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -24,19 +26,33 @@ import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Locale;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Resizes a picked image. Only a screen-sized copy of it is kept for the preview, which
+ * {@link ImagePreviewRenderer} draws in the background; the original is decoded again at full
+ * resolution, and scaled, only when it is saved.
+ */
 public class ImageEditorFragment extends Fragment {
 
+    private static final ExecutorService IO_EXECUTOR = Executors.newSingleThreadExecutor();
+    // Larger exports are shrunk, so the scaled copy takes at most an eighth of the heap.
+    private static final long EXPORT_MAX_PIXELS = Runtime.getRuntime().maxMemory() / 8 / 4;
+
     private ImageView imageView;
     private SeekBar widthSeekBar, heightSeekBar;
     private TextView textWidth, textHeight;
     private Button btnLoadImage, btnSaveImage;
-    private Bitmap originalBitmap;
+    private ImagePreviewRenderer previewRenderer;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private Uri imageUri;
 
     private final ActivityResultLauncher<String> pickImageLauncher = registerForActivityResult(
             new ActivityResultContracts.GetContent(),
@@ -60,6 +76,7 @@ public class ImageEditorFragment extends Fragment {
         textHeight = view.findViewById(R.id.text_height);
         btnLoadImage = view.findViewById(R.id.btn_load_image);
         btnSaveImage = view.findViewById(R.id.btn_save_image);
+        previewRenderer = new ImagePreviewRenderer(imageView);
 
         setupSeekBars();
         setupButtons();
@@ -67,6 +84,14 @@ public class ImageEditorFragment extends Fragment {
         return view;
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        previewRenderer.release();
+        previewRenderer = null;
+        imageUri = null;
+    }
+
     private void setupSeekBars() {
         widthSeekBar.setMax(400);
         widthSeekBar.setProgress(100);
@@ -114,7 +139,7 @@ public class ImageEditorFragment extends Fragment {
         btnLoadImage.setOnClickListener(v -> pickImageLauncher.launch("image/*"));
 
         btnSaveImage.setOnClickListener(v -> {
-            if (imageView.getDrawable() != null) {
+            if (imageUri != null) {
                 saveToGallery();
             } else {
                 Toast.makeText(getContext(), "Сначала загрузите изображение", Toast.LENGTH_SHORT).show();
@@ -123,80 +148,153 @@ public class ImageEditorFragment extends Fragment {
     }
 
     private void loadImage(Uri uri) {
-        try {
-            InputStream inputStream = requireContext().getContentResolver().openInputStream(uri);
-            originalBitmap = BitmapFactory.decodeStream(inputStream);
-            inputStream.close();
-
-            imageView.setImageBitmap(originalBitmap);
-            widthSeekBar.setProgress(100);
-            heightSeekBar.setProgress(100);
-            updateTextFields();
-
-        } catch (Exception e) {
-            Toast.makeText(getContext(), "Ошибка загрузки", Toast.LENGTH_SHORT).show();
-        }
+        Context context = requireContext().getApplicationContext();
+        int[] bounds = ImagePreviewRenderer.viewSize(imageView);
+        IO_EXECUTOR.execute(() -> {
+            Bitmap preview = null;
+            try {
+                preview = decodePreview(context, uri, bounds[0], bounds[1]);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            Bitmap decoded = preview;
+            mainHandler.post(() -> {
+                if (previewRenderer == null) {
+                    if (decoded != null) decoded.recycle();
+                    return;
+                }
+                if (decoded == null) {
+                    Toast.makeText(context, "Ошибка загрузки", Toast.LENGTH_SHORT).show();
+                    return;
+                }
+                imageUri = uri;
+                previewRenderer.setSource(decoded);
+                widthSeekBar.setProgress(100);
+                heightSeekBar.setProgress(100);
+                updateTextFields();
+                updateImage();
+            });
+        });
     }
 
-    private void updateImage() {
-        if (originalBitmap == null) return;
+    private static Bitmap decodePreview(Context context, Uri uri, int width, int height) throws IOException {
+        int[] bounds = readBounds(context, uri);
+        return bounds != null ? decodeSampled(context, uri, bounds, width, height) : null;
+    }
 
-        float widthScale = (widthSeekBar.getProgress() + 100) / 100f;
-        float heightScale = (heightSeekBar.getProgress() + 100) / 100f;
+    private static int[] readBounds(Context context, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) return null;
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+        return new int[]{bounds.outWidth, bounds.outHeight};
+    }
 
-        int newWidth = (int)(originalBitmap.getWidth() * widthScale);
-        int newHeight = (int)(originalBitmap.getHeight() * heightScale);
+    // Decodes at the smallest power-of-two sample that still covers width x height.
+    private static Bitmap decodeSampled(Context context, Uri uri, int[] bounds, int width, int height)
+            throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ThumbnailDecoder.sampleSize(bounds[0], bounds[1], width, height);
+        try (InputStream in = context.getContentResolver().openInputStream(uri)) {
+            if (in == null) return null;
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
 
-        Bitmap scaledBitmap = Bitmap.createScaledBitmap(originalBitmap, newWidth, newHeight, true);
-        imageView.setImageBitmap(scaledBitmap);
+    private float widthScale() {
+        return (widthSeekBar.getProgress() + 100) / 100f;
     }
 
-    private void saveToGallery() {
-        try {
-            if (imageView.getDrawable() == null) return;
+    private float heightScale() {
+        return (heightSeekBar.getProgress() + 100) / 100f;
+    }
 
-            BitmapDrawable drawable = (BitmapDrawable) imageView.getDrawable();
-            Bitmap bitmap = drawable.getBitmap();
+    private void updateImage() {
+        if (imageUri == null || previewRenderer == null) return;
+        previewRenderer.setScale(widthScale(), heightScale());
+    }
 
-            String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
-            String fileName = "IMG_" + timeStamp + ".jpg";
+    private void saveToGallery() {
+        Context context = requireContext().getApplicationContext();
+        Uri uri = imageUri;
+        float widthScale = widthScale();
+        float heightScale = heightScale();
+        btnSaveImage.setEnabled(false);
+        IO_EXECUTOR.execute(() -> {
+            String message;
+            Bitmap original = null;
+            Bitmap scaled = null;
+            try {
+                // The size comes from the bounds, so the original is only decoded as large as needed.
+                int[] bounds = readBounds(context, uri);
+                if (bounds == null) throw new IOException("Не удалось прочитать изображение");
+                int[] size = ImagePreviewRenderer.exportSize(bounds[0], bounds[1], widthScale, heightScale,
+                        EXPORT_MAX_PIXELS);
+                int[] requested = ImagePreviewRenderer.exportSize(bounds[0], bounds[1], widthScale, heightScale,
+                        Long.MAX_VALUE);
+                original = decodeSampled(context, uri, bounds, size[0], size[1]);
+                if (original == null) throw new IOException("Не удалось прочитать изображение");
+                scaled = Bitmap.createScaledBitmap(original, size[0], size[1], true);
+                if (scaled != original) {
+                    original.recycle();
+                    original = null;
+                }
+                message = writeToGallery(context, scaled);
+                if (size[0] != requested[0] || size[1] != requested[1]) {
+                    message += " (уменьшено до " + size[0] + "×" + size[1] + ")";
+                }
+            } catch (Exception e) {
+                message = "Ошибка: " + e.getMessage();
+            } finally {
+                if (original != null) original.recycle();
+                if (scaled != null && scaled != original) scaled.recycle();
+            }
+            String result = message;
+            mainHandler.post(() -> {
+                Toast.makeText(context, result, Toast.LENGTH_SHORT).show();
+                if (btnSaveImage != null) btnSaveImage.setEnabled(true);
+            });
+        });
+    }
 
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                ContentValues values = new ContentValues();
-                values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
-                values.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
-                values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
+    private static String writeToGallery(Context context, Bitmap bitmap) throws IOException {
+        String timeStamp = new SimpleDateFormat("yyyyMMdd_HHmmss", Locale.getDefault()).format(new Date());
+        String fileName = "IMG_" + timeStamp + ".jpg";
 
-                Uri uri = requireContext().getContentResolver().insert(
-                        MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.DISPLAY_NAME, fileName);
+            values.put(MediaStore.MediaColumns.MIME_TYPE, "image/jpeg");
+            values.put(MediaStore.MediaColumns.RELATIVE_PATH, Environment.DIRECTORY_PICTURES);
 
-                if (uri != null) {
-                    OutputStream outputStream = requireContext().getContentResolver().openOutputStream(uri);
-                    bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-                    outputStream.close();
-                    Toast.makeText(getContext(), "Сохранено в галерею", Toast.LENGTH_SHORT).show();
-                }
-            } else {
-                File directory = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
-                directory.mkdirs();
+            Uri uri = context.getContentResolver().insert(
+                    MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
+            if (uri == null) throw new IOException("Не удалось создать файл");
 
-                File file = new File(directory, fileName);
-                FileOutputStream outputStream = new FileOutputStream(file);
+            try (OutputStream outputStream = context.getContentResolver().openOutputStream(uri)) {
                 bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
-                outputStream.close();
-
-                MediaStore.Images.Media.insertImage(
-                        requireContext().getContentResolver(),
-                        file.getAbsolutePath(),
-                        fileName,
-                        "Изображение из Notes"
-                );
-
-                Toast.makeText(getContext(), "Сохранено: " + file.getAbsolutePath(), Toast.LENGTH_SHORT).show();
             }
+            return "Сохранено в галерею";
+        }
+
+        File directory = Environment.getExternalStoragePublicDirectory(Environment.DIRECTORY_PICTURES);
+        directory.mkdirs();
 
-        } catch (Exception e) {
-            Toast.makeText(getContext(), "Ошибка: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+        File file = new File(directory, fileName);
+        try (FileOutputStream outputStream = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, outputStream);
         }
+
+        MediaStore.Images.Media.insertImage(
+                context.getContentResolver(),
+                file.getAbsolutePath(),
+                fileName,
+                "Изображение из Notes"
+        );
+
+        return "Сохранено: " + file.getAbsolutePath();
     }
-}
\ No newline at end of file
+}
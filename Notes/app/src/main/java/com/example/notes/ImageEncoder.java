@@ -0,0 +1,170 @@
+package com.example.notes;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.IntToLongFunction;
+
+/**
+ * Picks how a note image is stored. Graphics (screenshots, drawings, anything with alpha or
+ * few colours) are tried lossless as PNG and, from API 29, WebP, and the smaller is kept if it
+ * fits the byte budget. Everything else, and graphics that do not fit, is stored lossy (WebP by default,
+ * JPEG if configured, but WebP for images with alpha, which JPEG would lose) at the highest
+ * quality whose size fits the budget, found by a binary search that only counts bytes.
+ * Readers never need the format: BitmapFactory and Glide recognise it from the blob's header.
+ */
+public class ImageEncoder {
+    public static final ImageEncoder DEFAULT = new ImageEncoder(200 * 1024, true);
+
+    static final int MIN_QUALITY = 40;
+    static final int MAX_QUALITY = 90;
+    // A graphic has at most this many distinct colours among the sampled pixels.
+    static final int GRAPHIC_COLORS = 256;
+    private static final int SAMPLE_GRID = 64;
+
+    private final long targetBytes;
+    private final boolean preferWebp;
+
+    /** {@code preferWebp} false stores photos without alpha as JPEG instead. */
+    public ImageEncoder(long targetBytes, boolean preferWebp) {
+        this.targetBytes = targetBytes;
+        this.preferWebp = preferWebp;
+    }
+
+    /** A format and quality to compress with. */
+    public static final class Encoding {
+        public final Bitmap.CompressFormat format;
+        public final int quality;
+
+        Encoding(Bitmap.CompressFormat format, int quality) {
+            this.format = format;
+            this.quality = quality;
+        }
+    }
+
+    /** Chooses the encoding for the bitmap and stores it, streaming, in the blob store. */
+    public String store(Bitmap bitmap, ImageBlobStore blobStore) throws IOException {
+        Encoding encoding = choose(bitmap);
+        return blobStore.put(out -> {
+            if (!bitmap.compress(encoding.format, encoding.quality, out)) {
+                throw new IOException("Could not compress as " + encoding.format);
+            }
+        });
+    }
+
+    public Encoding choose(Bitmap bitmap) {
+        if (looksLikeGraphic(bitmap)) {
+            Encoding lossless = new Encoding(Bitmap.CompressFormat.PNG, 100);
+            long losslessSize = encodedSize(bitmap, lossless);
+            Bitmap.CompressFormat webpFormat = losslessWebp();
+            if (webpFormat != null) {
+                Encoding webp = new Encoding(webpFormat, 100);
+                long webpSize = encodedSize(bitmap, webp);
+                if (webpSize <= losslessSize) {
+                    lossless = webp;
+                    losslessSize = webpSize;
+                }
+            }
+            if (losslessSize <= targetBytes) return lossless;
+        }
+        Bitmap.CompressFormat lossy = preferWebp || bitmap.hasAlpha() ? lossyWebp() : Bitmap.CompressFormat.JPEG;
+        int quality = searchQuality(q -> encodedSize(bitmap, new Encoding(lossy, q)),
+                MIN_QUALITY, MAX_QUALITY, targetBytes);
+        return new Encoding(lossy, quality);
+    }
+
+    /**
+     * The highest quality in {@code [min, max]} whose size fits {@code budget}, or {@code min}
+     * if none does. Sizes are assumed to grow with quality.
+     */
+    static int searchQuality(IntToLongFunction sizeAt, int min, int max, long budget) {
+        int low = min;
+        int high = max;
+        int best = min;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (sizeAt.applyAsLong(mid) <= budget) {
+                best = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return best;
+    }
+
+    private static boolean looksLikeGraphic(Bitmap bitmap) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        int stepX = Math.max(1, width / SAMPLE_GRID);
+        int stepY = Math.max(1, height / SAMPLE_GRID);
+        int columns = (width + stepX - 1) / stepX;
+        int[] row = new int[width];
+        int[] samples = new int[columns * ((height + stepY - 1) / stepY)];
+        int count = 0;
+        for (int y = 0; y < height; y += stepY) {
+            bitmap.getPixels(row, 0, width, 0, y, width, 1);
+            for (int x = 0; x < width; x += stepX) {
+                samples[count++] = row[x];
+            }
+        }
+        return looksLikeGraphic(samples, count, bitmap.hasAlpha());
+    }
+
+    /** Whether sampled pixels look like a graphic rather than a photo. */
+    static boolean looksLikeGraphic(int[] pixels, int count, boolean hasAlpha) {
+        if (hasAlpha) return true;
+        Set<Integer> colors = new HashSet<>();
+        for (int i = 0; i < count; i++) {
+            colors.add(pixels[i]);
+            if (colors.size() > GRAPHIC_COLORS) return false;
+        }
+        return true;
+    }
+
+    private static long encodedSize(Bitmap bitmap, Encoding encoding) {
+        CountingStream counter = new CountingStream();
+        bitmap.compress(encoding.format, encoding.quality, counter);
+        return counter.count;
+    }
+
+    // Quality 100 with the old WEBP constant is lossless only from API 29; before that there is
+    // no lossless WebP, and null leaves graphics to PNG.
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat losslessWebp() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSLESS;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            return Bitmap.CompressFormat.WEBP;
+        }
+        return null;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat lossyWebp() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+
+    /** Measures an encoding without keeping its bytes. */
+    static final class CountingStream extends OutputStream {
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
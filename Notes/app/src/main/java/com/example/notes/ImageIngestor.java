@@ -0,0 +1,115 @@
+package com.example.notes;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Turns picked images into blobs off the main thread: reads the bounds first, decodes with
+ * the {@code inSampleSize} that still covers {@link #MAX_SIZE}, scales the rest of the way
+ * and lets {@link ImageEncoder} compress it straight into the blob store. A few images are
+ * processed at once on a small shared pool, so a large pick neither blocks the editor nor
+ * holds every full-size bitmap at the same time.
+ */
+public class ImageIngestor {
+    static final int MAX_SIZE = 800;
+    private static final int THREADS = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+    private static final ExecutorService EXECUTOR = Executors.newFixedThreadPool(THREADS);
+
+    public interface Callback {
+        /** Called on the main thread; the result is null when the image could not be read. */
+        void onIngested(Result result);
+    }
+
+    public static final class Result {
+        public final String hash;
+        public final Bitmap bitmap;
+
+        Result(String hash, Bitmap bitmap) {
+            this.hash = hash;
+            this.bitmap = bitmap;
+        }
+    }
+
+    private final ContentResolver resolver;
+    private final ImageBlobStore blobStore;
+    private final ImageEncoder encoder;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public ImageIngestor(Context context, ImageBlobStore blobStore) {
+        this(context, blobStore, ImageEncoder.DEFAULT);
+    }
+
+    public ImageIngestor(Context context, ImageBlobStore blobStore, ImageEncoder encoder) {
+        this.resolver = context.getApplicationContext().getContentResolver();
+        this.blobStore = blobStore;
+        this.encoder = encoder;
+    }
+
+    public void ingest(Uri uri, Callback callback) {
+        EXECUTOR.execute(() -> {
+            Result result = null;
+            try {
+                result = ingest(uri);
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+            Result delivered = result;
+            mainHandler.post(() -> callback.onIngested(delivered));
+        });
+    }
+
+    private Result ingest(Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return null;
+            BitmapFactory.decodeStream(in, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSize(bounds.outWidth, bounds.outHeight);
+        Bitmap decoded;
+        try (InputStream in = resolver.openInputStream(uri)) {
+            if (in == null) return null;
+            decoded = BitmapFactory.decodeStream(in, null, options);
+        }
+        if (decoded == null) return null;
+
+        int[] size = scaledSize(decoded.getWidth(), decoded.getHeight());
+        boolean resize = size[0] != decoded.getWidth() || size[1] != decoded.getHeight();
+        Bitmap scaled = resize ? Bitmap.createScaledBitmap(decoded, size[0], size[1], true) : decoded;
+        if (scaled != decoded) decoded.recycle();
+
+        String hash = encoder.store(scaled, blobStore);
+        blobStore.rememberDimensions(hash, scaled.getWidth(), scaled.getHeight());
+        return new Result(hash, scaled);
+    }
+
+    /** The largest power of two that keeps the long side at or above {@link #MAX_SIZE}. */
+    static int sampleSize(int width, int height) {
+        int longSide = Math.max(width, height);
+        return ThumbnailDecoder.sampleSize(longSide, longSide, MAX_SIZE, MAX_SIZE);
+    }
+
+    /** The size an image is stored at: its long side brought down to {@link #MAX_SIZE}. */
+    static int[] scaledSize(int width, int height) {
+        if (width >= height && width > MAX_SIZE) {
+            return new int[]{MAX_SIZE, Math.max(1, (int) (MAX_SIZE * ((float) height / width)))};
+        }
+        if (height > width && height > MAX_SIZE) {
+            return new int[]{Math.max(1, (int) (MAX_SIZE * ((float) width / height))), MAX_SIZE};
+        }
+        return new int[]{width, height};
+    }
+}
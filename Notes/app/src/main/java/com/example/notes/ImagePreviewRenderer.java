@@ -0,0 +1,187 @@
+package com.example.notes;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.PorterDuff;
+import android.graphics.Rect;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Draws the resize preview of {@link ImageEditorFragment}. The preview is the source image,
+ * already decoded at screen size, stretched to the chosen scale and fitted into the view, so
+ * it never costs more than one screen of pixels however large the scale gets.
+ *
+ * <p>Scale changes only mark the preview dirty; it is rendered at most once per frame and one
+ * render at a time, in the background, and a render that finishes picks up whatever changed
+ * meanwhile. Renders go into two view-sized buffers that take turns being shown, so dragging
+ * a slider allocates nothing. All calls happen on the main thread.
+ */
+class ImagePreviewRenderer {
+    private static final ExecutorService RENDER_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final ImageView imageView;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private Bitmap source;
+    private Bitmap shown;
+    private Bitmap spare;
+    // The source a running render reads from, if it was replaced or released meanwhile.
+    private Bitmap retiredSource;
+    private float scaleX = 1;
+    private float scaleY = 1;
+    private boolean dirty;
+    private boolean framePosted;
+    private boolean rendering;
+    private boolean released;
+
+    ImagePreviewRenderer(ImageView imageView) {
+        this.imageView = imageView;
+    }
+
+    /** Takes ownership of {@code source}, which should already be about the view's size. */
+    void setSource(Bitmap source) {
+        retire(this.source);
+        this.source = source;
+        invalidate();
+    }
+
+    void setScale(float scaleX, float scaleY) {
+        this.scaleX = scaleX;
+        this.scaleY = scaleY;
+        invalidate();
+    }
+
+    /** Frees every bitmap; the ones a running render still uses go once it finishes. */
+    void release() {
+        released = true;
+        imageView.setImageDrawable(null);
+        retire(source);
+        source = null;
+        recycle(shown);
+        recycle(spare);
+        shown = null;
+        spare = null;
+    }
+
+    private void invalidate() {
+        dirty = true;
+        if (framePosted || released) return;
+        framePosted = true;
+        imageView.postOnAnimation(this::renderFrame);
+    }
+
+    private void renderFrame() {
+        framePosted = false;
+        if (rendering || !dirty || source == null || released) return;
+        dirty = false;
+
+        int[] bounds = viewSize(imageView);
+        int[] size = previewSize(source.getWidth(), source.getHeight(), scaleX, scaleY, bounds[0], bounds[1]);
+        Bitmap target = obtain(size[0], size[1], bounds[0], bounds[1]);
+        Bitmap from = source;
+        rendering = true;
+        RENDER_EXECUTOR.execute(() -> {
+            Canvas canvas = new Canvas(target);
+            canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
+            canvas.drawBitmap(from, null, new Rect(0, 0, size[0], size[1]), paint);
+            mainHandler.post(() -> onRendered(from, target));
+        });
+    }
+
+    private void onRendered(Bitmap from, Bitmap target) {
+        rendering = false;
+        if (from == retiredSource) {
+            from.recycle();
+            retiredSource = null;
+        }
+        if (released) {
+            target.recycle();
+            return;
+        }
+        if (from != source) {
+            // Rendered from an image that has been replaced since.
+            spare = target;
+        } else {
+            spare = shown;
+            shown = target;
+            imageView.setImageBitmap(target);
+        }
+        if (dirty) invalidate();
+    }
+
+    // Buffers are allocated at the view's size once and reconfigured to each preview's size.
+    private Bitmap obtain(int width, int height, int maxWidth, int maxHeight) {
+        Bitmap bitmap = spare;
+        spare = null;
+        long needed = (long) width * height * 4;
+        if (bitmap != null && bitmap.getAllocationByteCount() >= needed) {
+            bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+            return bitmap;
+        }
+        recycle(bitmap);
+        bitmap = Bitmap.createBitmap(Math.max(width, maxWidth), Math.max(height, maxHeight), Bitmap.Config.ARGB_8888);
+        bitmap.reconfigure(width, height, Bitmap.Config.ARGB_8888);
+        return bitmap;
+    }
+
+    private void retire(Bitmap old) {
+        if (old == null) return;
+        if (rendering) {
+            // Only the first source retired during a render is the one it reads.
+            if (retiredSource == null) {
+                retiredSource = old;
+            } else {
+                old.recycle();
+            }
+        } else {
+            old.recycle();
+        }
+    }
+
+    /** The space an image view shows its picture in, or the screen before it is laid out. */
+    static int[] viewSize(ImageView view) {
+        int width = view.getWidth() - view.getPaddingLeft() - view.getPaddingRight();
+        int height = view.getHeight() - view.getPaddingTop() - view.getPaddingBottom();
+        if (width <= 0 || height <= 0) {
+            width = view.getResources().getDisplayMetrics().widthPixels;
+            height = view.getResources().getDisplayMetrics().heightPixels;
+        }
+        return new int[]{width, height};
+    }
+
+    private static void recycle(Bitmap bitmap) {
+        if (bitmap != null) bitmap.recycle();
+    }
+
+    /**
+     * The preview of an image scaled by {@code scaleX} and {@code scaleY}: the same aspect
+     * ratio, fitted into {@code maxWidth} by {@code maxHeight} and never enlarged beyond it.
+     */
+    static int[] previewSize(int width, int height, float scaleX, float scaleY, int maxWidth, int maxHeight) {
+        float scaledWidth = width * scaleX;
+        float scaledHeight = height * scaleY;
+        float fit = Math.min(1f, Math.min(maxWidth / scaledWidth, maxHeight / scaledHeight));
+        return new int[]{
+                Math.max(1, Math.round(scaledWidth * fit)),
+                Math.max(1, Math.round(scaledHeight * fit))
+        };
+    }
+
+    /**
+     * The size the image is exported at: the original's pixels times the scale, shrunk with the
+     * same aspect ratio if that is more than {@code maxPixels}.
+     */
+    static int[] exportSize(int width, int height, float scaleX, float scaleY, long maxPixels) {
+        double scaledWidth = Math.max(1, (int) (width * scaleX));
+        double scaledHeight = Math.max(1, (int) (height * scaleY));
+        double fit = Math.min(1, Math.sqrt(maxPixels / (scaledWidth * scaledHeight)));
+        return new int[]{Math.max(1, (int) (scaledWidth * fit)), Math.max(1, (int) (scaledHeight * fit))};
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.notes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * File based {@link TaskStore}: per-task records and the mapped index of {@link TaskFileStore},
+ * with changes appended to the {@link TaskJournal} and folded in by the compactor.
+ * The header lists are kept in memory, and tasks changed since the last compaction are held
+ * until their record has been rewritten.
+ */
+public class JournaledTaskStore implements TaskStore {
+    private final TaskFileStore fileStore;
+    private final TaskJournal journal;
+    private final TaskJournalCompactor compactor;
+    private final OrderedTaskHeaders tasks;
+    private final OrderedTaskHeaders completedTasks;
+
+    private final Map<String, Task> unflushedTasks = new HashMap<>();
+    private final Map<String, Integer> unflushedOpCounts = new HashMap<>();
+    private final TaskOpApplier applier;
+
+    public JournaledTaskStore(TaskFileStore fileStore, TaskJournal journal) {
+        this.fileStore = fileStore;
+        this.journal = journal;
+        this.compactor = new TaskJournalCompactor(journal, fileStore);
+
+        // Replay whatever the previous session left in the journal into the snapshot,
+        // so only the headers have to be read here.
+        compactor.resumePending();
+        compactor.compactNow();
+        compactor.setListener(this::onCompacted);
+
+        MappedTaskIndex mapped = fileStore.mapIndex();
+        if (mapped != null) {
+            tasks = new OrderedTaskHeaders(mapped.headers(false));
+            completedTasks = new OrderedTaskHeaders(mapped.headers(true));
+        } else {
+            TaskFileStore.Index index = fileStore.loadIndex();
+            tasks = new OrderedTaskHeaders(index.getTasks());
+            completedTasks = new OrderedTaskHeaders(index.getCompleted());
+        }
+        applier = new TaskOpApplier(tasks, completedTasks, unflushedTasks, fileStore::loadTask);
+    }
+
+    @Override
+    public synchronized int count(boolean completed) {
+        return (completed ? completedTasks : tasks).size();
+    }
+
+    @Override
+    public synchronized List<TaskHeader> loadPage(boolean completed, TaskHeader after, int limit) {
+        OrderedTaskHeaders list = completed ? completedTasks : tasks;
+        return list.page(after != null ? after.getId() : null, limit);
+    }
+
+    @Override
+    public synchronized List<TaskHeader> loadRange(boolean completed, int offset, int limit) {
+        return (completed ? completedTasks : tasks).range(offset, limit);
+    }
+
+    @Override
+    public synchronized List<TaskHeader> loadHeaders(boolean completed, Collection<String> ids) {
+        Set<String> wanted = ids instanceof Set ? (Set<String>) ids : new HashSet<>(ids);
+        List<TaskHeader> result = new ArrayList<>();
+        for (TaskHeader header : completed ? completedTasks : tasks) {
+            if (wanted.contains(header.getId())) {
+                result.add(header);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public synchronized Task getTask(String id) {
+        Task task = unflushedTasks.get(id);
+        return task != null ? task : fileStore.loadTask(id);
+    }
+
+    @Override
+    public List<String> loadImageRefs(Collection<String> ids) {
+        List<String> refs = new ArrayList<>();
+        for (String id : ids) {
+            Task task = getTask(id);
+            if (task != null) {
+                refs.addAll(task.getDocument().imageRefs());
+            }
+        }
+        return refs;
+    }
+
+    @Override
+    public synchronized List<String> loadAllImageRefs() {
+        List<String> refs = new ArrayList<>();
+        for (boolean completed : new boolean[]{false, true}) {
+            for (TaskHeader header : completed ? completedTasks : tasks) {
+                Task task = getTask(header.getId());
+                if (task != null) {
+                    refs.addAll(task.getDocument().imageRefs());
+                }
+            }
+        }
+        return refs;
+    }
+
+    @Override
+    public void apply(List<TaskOp> batch) throws IOException {
+        synchronized (this) {
+            for (TaskOp op : batch) {
+                applier.apply(op);
+                Integer count = unflushedOpCounts.get(op.getTaskId());
+                unflushedOpCounts.put(op.getTaskId(), count == null ? 1 : count + 1);
+            }
+            applier.getDeleted().clear();
+        }
+        journal.append(batch);
+        compactor.maybeCompact();
+    }
+
+    @Override
+    public synchronized List<Task> loadAll(boolean completed) {
+        List<Task> result = new ArrayList<>();
+        for (TaskHeader header : completed ? completedTasks : tasks) {
+            Task task = getTask(header.getId());
+            if (task != null) {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    private synchronized void onCompacted(List<TaskOp> ops) {
+        for (TaskOp op : ops) {
+            String id = op.getTaskId();
+            Integer count = unflushedOpCounts.get(id);
+            if (count == null) continue;
+            if (count <= 1) {
+                unflushedOpCounts.remove(id);
+                unflushedTasks.remove(id);
+            } else {
+                unflushedOpCounts.put(id, count - 1);
+            }
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.notes;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+
+/**
+ * An editor image that takes its size from the image's dimensions and draws the bitmap only
+ * while one is set; without it a placeholder of the same size is drawn, so loading and
+ * releasing the bitmap never moves the text around it.
+ */
+public class LazyImageDrawable extends Drawable {
+    private static final int PLACEHOLDER_COLOR = 0xFFE0E0E0;
+
+    final String ref;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final Paint paint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint placeholderPaint = new Paint();
+    private Bitmap bitmap;
+
+    // Kept by EditorImages: whether a decode is queued, the bytes counted against the budget,
+    // and a counter that tells a queued decode it was released in the meantime.
+    boolean loading;
+    long reservedBytes;
+    int generation;
+
+    /** Dimensions of 0 mean unknown, e.g. for a placeholder of an image still being read. */
+    LazyImageDrawable(String ref, int imageWidth, int imageHeight) {
+        this.ref = ref;
+        this.imageWidth = imageWidth;
+        this.imageHeight = imageHeight;
+        placeholderPaint.setColor(PLACEHOLDER_COLOR);
+    }
+
+    /** Sizes the drawable to {@code maxWidth} at most, keeping the image's aspect ratio. */
+    void fit(int maxWidth) {
+        int width = imageWidth > 0 ? imageWidth : maxWidth;
+        int height = imageHeight > 0 ? imageHeight : maxWidth / 2;
+        if (width > maxWidth) {
+            float ratio = (float) height / width;
+            width = maxWidth;
+            height = Math.max(1, (int) (width * ratio));
+        }
+        setBounds(0, 0, width, height);
+    }
+
+    boolean hasKnownSize() {
+        return imageWidth > 0 && imageHeight > 0;
+    }
+
+    int getImageWidth() {
+        return imageWidth;
+    }
+
+    int getImageHeight() {
+        return imageHeight;
+    }
+
+    Bitmap getBitmap() {
+        return bitmap;
+    }
+
+    void setBitmap(Bitmap bitmap) {
+        this.bitmap = bitmap;
+        invalidateSelf();
+    }
+
+    @Override
+    public void draw(Canvas canvas) {
+        if (bitmap != null && !bitmap.isRecycled()) {
+            canvas.drawBitmap(bitmap, null, getBounds(), paint);
+        } else {
+            canvas.drawRect(getBounds(), placeholderPaint);
+        }
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        paint.setAlpha(alpha);
+        placeholderPaint.setAlpha(alpha);
+    }
+
+    @Override
+    public void setColorFilter(ColorFilter colorFilter) {
+        paint.setColorFilter(colorFilter);
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.TRANSLUCENT;
+    }
+}
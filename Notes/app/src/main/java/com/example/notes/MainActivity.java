@@ -10,9 +10,12 @@ import androidx.navigation.ui.NavigationUI;
 
 public class MainActivity extends AppCompatActivity {
 
+    private final TaskRowPool taskRowPool = new TaskRowPool();
+
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        taskRowPool.preInflate(this);
         setContentView(R.layout.activity_main);
 
         androidx.appcompat.widget.Toolbar toolbar = findViewById(R.id.toolbar);
@@ -34,4 +37,14 @@ public class MainActivity extends AppCompatActivity {
             NavigationUI.setupWithNavController(bottomNavigationView, navController);
         }
     }
+
+    public TaskRowPool getTaskRowPool() {
+        return taskRowPool;
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        DataManager.getInstance(this).flush();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.example.notes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Binary task index read through a memory-mapped file. Layout:
+ * <pre>
+ * "NTIX" | int version | int activeCount | int completedCount | int[] recordOffsets | records
+ * record: long createdAt | byte flags | id | title | preview | firstImage
+ * </pre>
+ * Strings are an int byte length (-1 for null) followed by UTF-8 bytes. Active records come
+ * first, then completed ones, each in list order. Opening the index reads no records; they are
+ * decoded straight from the mapping when the headers are asked for.
+ */
+public class MappedTaskIndex {
+    public static final int FORMAT_VERSION = 1;
+
+    private static final int MAGIC = 0x4E544958; // "NTIX"
+    private static final int HEADER_SIZE = 16;
+    private static final int FLAG_COMPLETED = 1;
+    private static final int FLAG_HAS_IMAGE = 1 << 1;
+    private static final int FIXED_RECORD_SIZE = 9;
+
+    private final ByteBuffer buffer;
+    private final int activeCount;
+    private final int completedCount;
+
+    private MappedTaskIndex(ByteBuffer buffer, int activeCount, int completedCount) {
+        this.buffer = buffer;
+        this.activeCount = activeCount;
+        this.completedCount = completedCount;
+    }
+
+    public static MappedTaskIndex open(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r");
+             FileChannel channel = raf.getChannel()) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Task index too short: " + size);
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return parse(buffer);
+        }
+    }
+
+    static MappedTaskIndex parse(ByteBuffer buffer) throws IOException {
+        int limit = buffer.limit();
+        if (limit < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a task index");
+        }
+        int version = buffer.getInt(4);
+        if (version != FORMAT_VERSION) {
+            throw new IOException("Unsupported task index version " + version);
+        }
+        int activeCount = buffer.getInt(8);
+        int completedCount = buffer.getInt(12);
+        long total = (long) activeCount + completedCount;
+        if (activeCount < 0 || completedCount < 0 || HEADER_SIZE + total * 4 > limit) {
+            throw new IOException("Corrupt task index header");
+        }
+        for (int i = 0; i < total; i++) {
+            int offset = buffer.getInt(HEADER_SIZE + i * 4);
+            if (offset < HEADER_SIZE || offset + FIXED_RECORD_SIZE > limit) {
+                throw new IOException("Corrupt task index offset at " + i);
+            }
+        }
+        return new MappedTaskIndex(buffer, activeCount, completedCount);
+    }
+
+    public int getActiveCount() { return activeCount; }
+    public int getCompletedCount() { return completedCount; }
+
+    /** Position of the {@code index}-th record of the active or the completed list. */
+    public int recordNumber(boolean completed, int index) {
+        return completed ? activeCount + index : index;
+    }
+
+    public TaskHeader header(int record) {
+        int position = offset(record);
+        long createdAt = buffer.getLong(position);
+        boolean completed = (buffer.get(position + 8) & FLAG_COMPLETED) != 0;
+        position += FIXED_RECORD_SIZE;
+        String id = readString(position);
+        position = skipString(position);
+        String title = readString(position);
+        position = skipString(position);
+        String preview = readString(position);
+        position = skipString(position);
+        String firstImage = readString(position);
+        return new TaskHeader(id, title, completed, createdAt, preview, firstImage);
+    }
+
+    public List<TaskHeader> headers(boolean completed) {
+        int count = completed ? completedCount : activeCount;
+        List<TaskHeader> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            headers.add(header(recordNumber(completed, i)));
+        }
+        return headers;
+    }
+
+    private int offset(int record) {
+        if (record < 0 || record >= activeCount + completedCount) {
+            throw new IndexOutOfBoundsException("record " + record);
+        }
+        return buffer.getInt(HEADER_SIZE + record * 4);
+    }
+
+    private int skipString(int position) {
+        int length = buffer.getInt(position);
+        return position + 4 + Math.max(length, 0);
+    }
+
+    private String readString(int position) {
+        int length = buffer.getInt(position);
+        if (length < 0) return null;
+        if (position + 4 + length > buffer.limit()) {
+            throw new IllegalStateException("Corrupt task index string at " + position);
+        }
+        byte[] bytes = new byte[length];
+        ByteBuffer slice = buffer.duplicate();
+        slice.position(position + 4);
+        slice.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    public static void write(File file, Collection<TaskHeader> tasks, Collection<TaskHeader> completed) throws IOException {
+        int total = tasks.size() + completed.size();
+        List<byte[][]> encoded = new ArrayList<>(total);
+        for (Collection<TaskHeader> list : Arrays.asList(tasks, completed)) {
+            for (TaskHeader header : list) {
+                encoded.add(new byte[][]{
+                        utf8(header.getId()), utf8(header.getTitle()),
+                        utf8(header.getPreview()), utf8(header.getFirstImage())});
+            }
+        }
+
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(tasks.size());
+            out.writeInt(completed.size());
+
+            int offset = HEADER_SIZE + total * 4;
+            for (byte[][] fields : encoded) {
+                out.writeInt(offset);
+                offset += FIXED_RECORD_SIZE;
+                for (byte[] field : fields) {
+                    offset += 4 + (field != null ? field.length : 0);
+                }
+            }
+
+            int i = 0;
+            for (Collection<TaskHeader> list : Arrays.asList(tasks, completed)) {
+                for (TaskHeader header : list) {
+                    out.writeLong(header.getCreatedAt());
+                    int flags = 0;
+                    if (header.isCompleted()) flags |= FLAG_COMPLETED;
+                    if (header.hasImage()) flags |= FLAG_HAS_IMAGE;
+                    out.writeByte(flags);
+                    for (byte[] field : encoded.get(i++)) {
+                        if (field == null) {
+                            out.writeInt(-1);
+                        } else {
+                            out.writeInt(field.length);
+                            out.write(field);
+                        }
+                    }
+                }
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        }
+    }
+
+    private static byte[] utf8(String value) {
+        return value != null ? value.getBytes(StandardCharsets.UTF_8) : null;
+    }
+}
@@ -0,0 +1,248 @@
+package com.example.notes;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A note body as an ordered list of runs: text, with line breaks as {@code '\n'}, and images.
+ * An image is either a blob hash or, for images the blob store does not hold (inline base64
+ * from old notes, links), the source as it was. Documents are immutable; build them with
+ * {@link Builder}.
+ *
+ * <p>Tasks store the document in the compact form of {@link #encode()}: a format char, then
+ * each run with its length up front, so {@link #decode} slices the string without scanning
+ * for tags or decoding entities. Stored values that are not in this form are HTML from before
+ * it and are read with {@link #fromHtml}; {@link #toHtml} writes the HTML back out. Both
+ * directions are lossless for everything {@link NoteMarkup.Tokenizer} reads: a document
+ * survives {@code toHtml} and {@code fromHtml} unchanged.
+ */
+public final class NoteDocument {
+    public static final int TEXT = 0;
+    public static final int IMAGE = 1;
+    public static final int IMAGE_SOURCE = 2;
+
+    static final char FORMAT = '\u0001';
+    private static final char FORMAT_VERSION = '1';
+    private static final char RUN_TEXT = 'T';
+    private static final char RUN_IMAGE = 'B';
+    private static final char RUN_IMAGE_SOURCE = 'I';
+    private static final int HASH_LENGTH = 64;
+
+    public static final NoteDocument EMPTY = new NoteDocument(new int[0], new String[0]);
+
+    private final int[] types;
+    private final String[] values;
+    private String encoded;
+
+    private NoteDocument(int[] types, String[] values) {
+        this.types = types;
+        this.values = values;
+    }
+
+    /** Reads a stored description: the encoded form, or HTML written before it. */
+    public static NoteDocument decode(String stored) {
+        if (stored == null || stored.isEmpty()) return EMPTY;
+        if (!isEncoded(stored)) return fromHtml(stored);
+
+        Builder builder = new Builder();
+        int length = stored.length();
+        int pos = 2;
+        // A damaged tail is dropped; the runs before it are still good.
+        while (pos < length) {
+            char kind = stored.charAt(pos++);
+            if (kind == RUN_IMAGE) {
+                if (pos + HASH_LENGTH > length) break;
+                builder.add(IMAGE, stored.substring(pos, pos + HASH_LENGTH));
+                pos += HASH_LENGTH;
+                continue;
+            }
+            int colon = stored.indexOf(':', pos);
+            if (colon < 0 || (kind != RUN_TEXT && kind != RUN_IMAGE_SOURCE)) break;
+            int runLength;
+            try {
+                runLength = Integer.parseInt(stored.substring(pos, colon));
+            } catch (NumberFormatException e) {
+                break;
+            }
+            int end = colon + 1 + runLength;
+            if (runLength < 0 || end > length) break;
+            if (kind == RUN_TEXT) {
+                builder.text.append(stored, colon + 1, end);
+            } else {
+                builder.imageSource(stored.substring(colon + 1, end));
+            }
+            pos = end;
+        }
+        NoteDocument document = builder.build();
+        if (pos == length) document.encoded = stored;
+        return document;
+    }
+
+    static boolean isEncoded(String stored) {
+        return stored != null && stored.length() >= 2 && stored.charAt(0) == FORMAT
+                && stored.charAt(1) == FORMAT_VERSION;
+    }
+
+    /** Reads HTML in one tokenizer pass; other tags are dropped the way the editor always did. */
+    public static NoteDocument fromHtml(String html) {
+        if (html == null || html.isEmpty()) return EMPTY;
+        Builder builder = new Builder();
+        NoteMarkup.Tokenizer tokens = new NoteMarkup.Tokenizer(html);
+        for (int type = tokens.next(); type != NoteMarkup.Tokenizer.END; type = tokens.next()) {
+            if (type == NoteMarkup.Tokenizer.TEXT) {
+                tokens.appendText(builder.text);
+            } else if (type == NoteMarkup.Tokenizer.LINE_BREAK) {
+                builder.lineBreak();
+            } else if (tokens.imageRef() != null) {
+                builder.image(tokens.imageRef());
+            } else {
+                builder.imageSource(tokens.imageSource());
+            }
+        }
+        return builder.build();
+    }
+
+    public String toHtml() {
+        NoteMarkup.Writer html = new NoteMarkup.Writer(estimatedLength(100));
+        for (int i = 0; i < types.length; i++) {
+            String value = values[i];
+            if (types[i] == TEXT) {
+                html.text(value, 0, value.length());
+            } else if (types[i] == IMAGE) {
+                html.image(value);
+            } else {
+                html.imageSource(value);
+            }
+        }
+        return html.toString();
+    }
+
+    public String encode() {
+        if (encoded == null) {
+            StringBuilder out = new StringBuilder(estimatedLength(HASH_LENGTH + 1));
+            out.append(FORMAT).append(FORMAT_VERSION);
+            for (int i = 0; i < types.length; i++) {
+                String value = values[i];
+                if (types[i] == IMAGE) {
+                    out.append(RUN_IMAGE).append(value);
+                } else {
+                    out.append(types[i] == TEXT ? RUN_TEXT : RUN_IMAGE_SOURCE)
+                            .append(value.length()).append(':').append(value);
+                }
+            }
+            encoded = out.toString();
+        }
+        return encoded;
+    }
+
+    public int size() {
+        return types.length;
+    }
+
+    public boolean isEmpty() {
+        return types.length == 0;
+    }
+
+    public int type(int index) {
+        return types[index];
+    }
+
+    /** The text of a TEXT run, the hash of an IMAGE run or the source of an IMAGE_SOURCE run. */
+    public String value(int index) {
+        return values[index];
+    }
+
+    /** Blob hashes of the images, in order and without repeats. */
+    public Set<String> imageRefs() {
+        Set<String> refs = new LinkedHashSet<>();
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == IMAGE) refs.add(values[i]);
+        }
+        return refs;
+    }
+
+    public String firstImageRef() {
+        for (int i = 0; i < types.length; i++) {
+            if (types[i] == IMAGE) return values[i];
+        }
+        return null;
+    }
+
+    private int estimatedLength(int perImage) {
+        int length = 16;
+        for (int i = 0; i < types.length; i++) {
+            length += types[i] == TEXT ? values[i].length() + 8 : perImage;
+        }
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof NoteDocument)) return false;
+        NoteDocument other = (NoteDocument) o;
+        return Arrays.equals(types, other.types) && Arrays.equals(values, other.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(types) + Arrays.hashCode(values);
+    }
+
+    /** Collects runs in order; neighbouring text and line breaks join into one text run. */
+    public static final class Builder {
+        private final StringBuilder text = new StringBuilder();
+        private int[] types = new int[4];
+        private String[] values = new String[4];
+        private int size;
+
+        public Builder text(CharSequence source, int start, int end) {
+            text.append(source, start, end);
+            return this;
+        }
+
+        public Builder lineBreak() {
+            text.append('\n');
+            return this;
+        }
+
+        public Builder image(String hash) {
+            if (!NoteMarkup.isHash(hash)) throw new IllegalArgumentException("Not a blob hash: " + hash);
+            return add(IMAGE, hash);
+        }
+
+        /** An image kept by its source; a missing source is kept as an empty one. */
+        public Builder imageSource(String source) {
+            return add(IMAGE_SOURCE, source != null ? source : "");
+        }
+
+        public NoteDocument build() {
+            flushText();
+            if (size == 0) return EMPTY;
+            return new NoteDocument(Arrays.copyOf(types, size), Arrays.copyOf(values, size));
+        }
+
+        private Builder add(int type, String value) {
+            flushText();
+            append(type, value);
+            return this;
+        }
+
+        private void flushText() {
+            if (text.length() == 0) return;
+            append(TEXT, text.toString());
+            text.setLength(0);
+        }
+
+        private void append(int type, String value) {
+            if (size == types.length) {
+                types = Arrays.copyOf(types, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            types[size] = type;
+            values[size] = value;
+            size++;
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.example.notes;
+
+/**
+ * The markup of a task description, read and written in one pass. A note is text with line
+ * breaks ({@code <br/>}) and images ({@code <img src="blob:<hash>">}, or inline base64 in old
+ * notes); any other tag is dropped and the entities Html.toHtml writes are decoded.
+ *
+ * <p>{@link Tokenizer} walks a description without copying it: text tokens are ranges of the
+ * source, so only decoded entities and image sources allocate. {@link Writer} is the reverse.
+ */
+public final class NoteMarkup {
+    public static final String LINE_BREAK = "<br/>";
+
+    private static final String[] ENTITY_NAMES = {"lt", "gt", "quot", "#39", "amp", "nbsp"};
+    private static final String[] ENTITY_VALUES = {"<", ">", "\"", "'", "&", "\u00A0"};
+
+    private NoteMarkup() {
+    }
+
+    public static final class Tokenizer {
+        public static final int END = 0;
+        public static final int TEXT = 1;
+        public static final int LINE_BREAK = 2;
+        public static final int IMAGE = 3;
+
+        private final String html;
+        private int pos;
+        private int type;
+        private int start;
+        private int end;
+        private String entity;
+        private String imageSource;
+
+        public Tokenizer(String html) {
+            this.html = html != null ? html : "";
+        }
+
+        /** Moves to the next token and returns its type. */
+        public int next() {
+            entity = null;
+            imageSource = null;
+            int length = html.length();
+            while (pos < length) {
+                char c = html.charAt(pos);
+                if (c == '<') {
+                    int close = html.indexOf('>', pos + 1);
+                    if (close < 0) {
+                        return text(pos, length);
+                    }
+                    int tagStart = pos;
+                    pos = close + 1;
+                    if (isTag(tagStart + 1, close, "img")) {
+                        imageSource = attribute(tagStart, close, "src");
+                        return token(IMAGE, tagStart, pos);
+                    }
+                    if (isTag(tagStart + 1, close, "br")) {
+                        return token(LINE_BREAK, tagStart, pos);
+                    }
+                } else if (c == '&') {
+                    int semicolon = html.indexOf(';', pos + 1);
+                    String decoded = semicolon > 0 && semicolon - pos <= 6
+                            ? decodeEntity(html, pos + 1, semicolon) : null;
+                    if (decoded == null) {
+                        return text(pos, runEnd(pos + 1));
+                    }
+                    int entityStart = pos;
+                    pos = semicolon + 1;
+                    entity = decoded;
+                    return token(TEXT, entityStart, pos);
+                } else {
+                    return text(pos, runEnd(pos));
+                }
+            }
+            return token(END, length, length);
+        }
+
+        public int type() {
+            return type;
+        }
+
+        /** The length of a TEXT token's text. */
+        public int textLength() {
+            return entity != null ? entity.length() : end - start;
+        }
+
+        /** A character of a TEXT token's text. */
+        public char textCharAt(int index) {
+            return entity != null ? entity.charAt(index) : html.charAt(start + index);
+        }
+
+        public void appendText(StringBuilder out) {
+            if (entity != null) {
+                out.append(entity);
+            } else {
+                out.append(html, start, end);
+            }
+        }
+
+        /** The src of an IMAGE token, or null if it has none. */
+        public String imageSource() {
+            return imageSource;
+        }
+
+        /** The blob hash of an IMAGE token, or null for inline and foreign images. */
+        public String imageRef() {
+            if (imageSource == null || !imageSource.startsWith(ImageBlobStore.REF_PREFIX)) return null;
+            String hash = imageSource.substring(ImageBlobStore.REF_PREFIX.length());
+            return isHash(hash) ? hash : null;
+        }
+
+        /** Where the current token starts and ends in the source. */
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        private int text(int from, int to) {
+            pos = to;
+            return token(TEXT, from, to);
+        }
+
+        private int token(int type, int start, int end) {
+            this.type = type;
+            this.start = start;
+            this.end = end;
+            return type;
+        }
+
+        // A text run goes on to the next tag or entity.
+        private int runEnd(int from) {
+            int length = html.length();
+            int i = from;
+            while (i < length) {
+                char c = html.charAt(i);
+                if (c == '<' || c == '&') break;
+                i++;
+            }
+            return i;
+        }
+
+        private boolean isTag(int nameStart, int close, String name) {
+            int nameEnd = nameStart + name.length();
+            if (nameEnd > close || !html.regionMatches(true, nameStart, name, 0, name.length())) return false;
+            char next = html.charAt(nameEnd);
+            return nameEnd == close || next == '/' || Character.isWhitespace(next);
+        }
+
+        private String attribute(int tagStart, int close, String name) {
+            String key = name + "=\"";
+            int at = html.indexOf(key, tagStart);
+            while (at >= 0 && at < close) {
+                if (at > tagStart && Character.isWhitespace(html.charAt(at - 1))) {
+                    int valueStart = at + key.length();
+                    int valueEnd = html.indexOf('"', valueStart);
+                    return valueEnd > 0 && valueEnd <= close ? html.substring(valueStart, valueEnd) : null;
+                }
+                at = html.indexOf(key, at + 1);
+            }
+            return null;
+        }
+    }
+
+    /** Builds a description from text, line breaks and images, escaping the text. */
+    public static final class Writer {
+        private final StringBuilder out;
+
+        public Writer(int capacity) {
+            out = new StringBuilder(capacity);
+        }
+
+        public Writer text(CharSequence text, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = text.charAt(i);
+                switch (c) {
+                    case '<': out.append("&lt;"); break;
+                    case '>': out.append("&gt;"); break;
+                    case '&': out.append("&amp;"); break;
+                    case '"': out.append("&quot;"); break;
+                    case '\n': out.append(LINE_BREAK); break;
+                    default: out.append(c);
+                }
+            }
+            return this;
+        }
+
+        public Writer lineBreak() {
+            out.append(LINE_BREAK);
+            return this;
+        }
+
+        public Writer image(String hash) {
+            out.append(ImageBlobStore.imageTag(hash));
+            return this;
+        }
+
+        /** An image by its raw source, as the tokenizer read it. */
+        public Writer imageSource(String source) {
+            out.append("<img src=\"").append(source).append("\" />");
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return out.toString();
+        }
+    }
+
+    static boolean isHash(String value) {
+        if (value.length() != 64) return false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) return false;
+        }
+        return true;
+    }
+
+    private static String decodeEntity(String html, int start, int end) {
+        int length = end - start;
+        for (int i = 0; i < ENTITY_NAMES.length; i++) {
+            String name = ENTITY_NAMES[i];
+            if (name.length() == length && html.regionMatches(start, name, 0, length)) {
+                return ENTITY_VALUES[i];
+            }
+        }
+        return null;
+    }
+}
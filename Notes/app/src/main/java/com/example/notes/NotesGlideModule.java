@@ -0,0 +1,48 @@
+package com.example.notes;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+import com.bumptech.glide.module.AppGlideModule;
+
+/**
+ * Registers the list thumbnail pipeline and sizes Glide's caches: decoded thumbnails stay in
+ * a memory LRU bounded in bytes and in a disk cache, so scrolling back to a row decodes nothing.
+ */
+@GlideModule
+public final class NotesGlideModule extends AppGlideModule {
+    private static final int MEMORY_CACHE_SCREENS = 2;
+    private static final long DISK_CACHE_BYTES = 32L * 1024 * 1024;
+    private static final String DISK_CACHE_DIR = "thumbnails";
+
+    @Override
+    public void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context)
+                .setMemoryCacheScreens(MEMORY_CACHE_SCREENS)
+                .build();
+        builder.setMemoryCache(new LruResourceCache(calculator.getMemoryCacheSize()));
+        builder.setDiskCache(new InternalCacheDiskCacheFactory(context, DISK_CACHE_DIR, DISK_CACHE_BYTES));
+    }
+
+    @Override
+    public void registerComponents(@NonNull Context context, @NonNull Glide glide, @NonNull Registry registry) {
+        registry.prepend(TaskThumbnail.class, ThumbnailModelLoader.BlobFile.class,
+                new ThumbnailModelLoader.Factory(context));
+        registry.prepend(Registry.BUCKET_BITMAP, ThumbnailModelLoader.BlobFile.class, Bitmap.class,
+                new ThumbnailDecoder(glide.getBitmapPool()));
+    }
+
+    @Override
+    public boolean isManifestParsingEnabled() {
+        return false;
+    }
+}
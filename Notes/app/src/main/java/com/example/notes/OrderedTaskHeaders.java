@@ -0,0 +1,153 @@
+package com.example.notes;
+
+import java.util.AbstractCollection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+/**
+ * One task list in display order, indexed by task id: a hash map over the nodes of a doubly
+ * linked list. Lookup, replace, remove and insertion at the front are O(1), so a batch of k
+ * ops costs O(k) however long the list is, and a page after a given id costs O(page).
+ */
+public class OrderedTaskHeaders extends AbstractCollection<TaskHeader> {
+    private static class Node {
+        TaskHeader header;
+        Node prev;
+        Node next;
+
+        Node(TaskHeader header) {
+            this.header = header;
+        }
+    }
+
+    private final Map<String, Node> nodes = new HashMap<>();
+    private Node head;
+    private Node tail;
+
+    public OrderedTaskHeaders() {
+    }
+
+    public OrderedTaskHeaders(Collection<TaskHeader> headers) {
+        for (TaskHeader header : headers) {
+            addLast(header);
+        }
+    }
+
+    /** Puts the header at the front, moving it there if the id is already listed. */
+    public void addFirst(TaskHeader header) {
+        remove(header.getId());
+        Node node = new Node(header);
+        node.next = head;
+        if (head != null) head.prev = node; else tail = node;
+        head = node;
+        nodes.put(header.getId(), node);
+    }
+
+    public void addLast(TaskHeader header) {
+        remove(header.getId());
+        Node node = new Node(header);
+        node.prev = tail;
+        if (tail != null) tail.next = node; else head = node;
+        tail = node;
+        nodes.put(header.getId(), node);
+    }
+
+    public TaskHeader get(String id) {
+        Node node = nodes.get(id);
+        return node != null ? node.header : null;
+    }
+
+    public boolean containsId(String id) {
+        return nodes.containsKey(id);
+    }
+
+    /** Swaps in a new header for the same id, keeping its position. */
+    public boolean replace(TaskHeader header) {
+        Node node = nodes.get(header.getId());
+        if (node == null) return false;
+        node.header = header;
+        return true;
+    }
+
+    public TaskHeader remove(String id) {
+        Node node = nodes.remove(id);
+        if (node == null) return null;
+        if (node.prev != null) node.prev.next = node.next; else head = node.next;
+        if (node.next != null) node.next.prev = node.prev; else tail = node.prev;
+        return node.header;
+    }
+
+    /** Up to {@code limit} headers following {@code afterId}, or from the front when it is null. */
+    public List<TaskHeader> page(String afterId, int limit) {
+        Node node;
+        if (afterId == null) {
+            node = head;
+        } else {
+            Node after = nodes.get(afterId);
+            if (after == null) return new ArrayList<>();
+            node = after.next;
+        }
+        List<TaskHeader> page = new ArrayList<>(Math.min(limit, nodes.size()));
+        for (; node != null && page.size() < limit; node = node.next) {
+            page.add(node.header);
+        }
+        return page;
+    }
+
+    /** Up to {@code limit} headers from position {@code offset}, walking in from the nearer end. */
+    public List<TaskHeader> range(int offset, int limit) {
+        int size = nodes.size();
+        if (offset < 0 || offset >= size || limit <= 0) return new ArrayList<>();
+        int end = Math.min(size, offset + limit);
+        Node node;
+        if (offset <= size - end) {
+            node = head;
+            for (int i = 0; i < offset; i++) node = node.next;
+        } else {
+            node = tail;
+            for (int i = size - 1; i > offset; i--) node = node.prev;
+        }
+        List<TaskHeader> range = new ArrayList<>(end - offset);
+        for (int i = offset; i < end; i++, node = node.next) {
+            range.add(node.header);
+        }
+        return range;
+    }
+
+    @Override
+    public int size() {
+        return nodes.size();
+    }
+
+    @Override
+    public void clear() {
+        nodes.clear();
+        head = null;
+        tail = null;
+    }
+
+    @Override
+    public Iterator<TaskHeader> iterator() {
+        return new Iterator<TaskHeader>() {
+            private Node next = head;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public TaskHeader next() {
+                if (next == null) throw new NoSuchElementException();
+                TaskHeader header = next.header;
+                next = next.next;
+                return header;
+            }
+        };
+    }
+}
@@ -76,6 +76,14 @@ public class SharedPrefManager {
         return tasks != null ? tasks : new ArrayList<>();
     }
 
+    public boolean hasTasks() {
+        return sharedPreferences.contains(KEY_TASKS) || sharedPreferences.contains(KEY_COMPLETED_TASKS);
+    }
+
+    public void removeTasks() {
+        sharedPreferences.edit().remove(KEY_TASKS).remove(KEY_COMPLETED_TASKS).apply();
+    }
+
     public void clearAll() {
         sharedPreferences.edit().clear().apply();
     }
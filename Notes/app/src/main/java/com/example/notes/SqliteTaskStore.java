@@ -0,0 +1,412 @@
+package com.example.notes;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * SQLite {@link TaskStore}: one row per task. List order is kept in {@code sort_key}, which
+ * is raised whenever a task is added or completed, so both lists are read newest first
+ * through the (completed, sort_key) index.
+ */
+public class SqliteTaskStore extends SQLiteOpenHelper implements TaskStore {
+    private static final String DB_NAME = "tasks.db";
+    private static final int DB_VERSION = 2;
+    private static final int PREVIEW_REFRESH_CHUNK = 200;
+
+    private static final String TABLE_TASKS = "tasks";
+    private static final String TABLE_META = "meta";
+    private static final String META_IMPORTED = "imported";
+
+    private static final String COL_ID = "id";
+    private static final String COL_TITLE = "title";
+    private static final String COL_DESCRIPTION = "description";
+    private static final String COL_IMAGE_URI = "image_uri";
+    private static final String COL_COMPLETED = "completed";
+    private static final String COL_CREATED_AT = "created_at";
+    private static final String COL_SORT_KEY = "sort_key";
+    private static final String COL_PREVIEW = "preview";
+    private static final String COL_FIRST_IMAGE = "first_image";
+    private static final String COL_PREVIEW_VERSION = "preview_version";
+
+    // Stays under SQLite's default limit of 999 bound parameters.
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final String[] HEADER_COLUMNS = {
+            COL_ID, COL_TITLE, COL_COMPLETED, COL_CREATED_AT, COL_PREVIEW, COL_FIRST_IMAGE, COL_SORT_KEY};
+    private static final String[] TASK_COLUMNS = {
+            COL_ID, COL_TITLE, COL_DESCRIPTION, COL_IMAGE_URI, COL_COMPLETED, COL_CREATED_AT};
+
+    private long lastSortKey = -1;
+
+    public SqliteTaskStore(Context context) {
+        super(context.getApplicationContext(), DB_NAME, null, DB_VERSION);
+        setWriteAheadLoggingEnabled(true);
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_TASKS + " ("
+                + COL_ID + " TEXT PRIMARY KEY, "
+                + COL_TITLE + " TEXT, "
+                + COL_DESCRIPTION + " TEXT, "
+                + COL_IMAGE_URI + " TEXT, "
+                + COL_COMPLETED + " INTEGER NOT NULL DEFAULT 0, "
+                + COL_CREATED_AT + " INTEGER NOT NULL, "
+                + COL_SORT_KEY + " INTEGER NOT NULL, "
+                + COL_PREVIEW + " TEXT, "
+                + COL_FIRST_IMAGE + " TEXT, "
+                + COL_PREVIEW_VERSION + " INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_tasks_list ON " + TABLE_TASKS
+                + " (" + COL_COMPLETED + ", " + COL_SORT_KEY + ")");
+        db.execSQL("CREATE TABLE " + TABLE_META + " (key TEXT PRIMARY KEY, value TEXT)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            db.execSQL("ALTER TABLE " + TABLE_TASKS + " ADD COLUMN "
+                    + COL_PREVIEW_VERSION + " INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+
+    public boolean isImported() {
+        return DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_META,
+                "key = ?", new String[]{META_IMPORTED}) > 0;
+    }
+
+    /** One-time copy of the existing lists, ordered newest first, in a single transaction. */
+    public void importTasks(List<Task> tasks, List<Task> completedTasks) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = compileInsert(db);
+        db.beginTransaction();
+        try {
+            long key = tasks.size() + completedTasks.size();
+            for (Task task : completedTasks) {
+                insert(insert, task, key--);
+            }
+            for (Task task : tasks) {
+                insert(insert, task, key--);
+            }
+            ContentValues meta = new ContentValues();
+            meta.put("key", META_IMPORTED);
+            meta.put("value", String.valueOf(System.currentTimeMillis()));
+            db.insertWithOnConflict(TABLE_META, null, meta, SQLiteDatabase.CONFLICT_REPLACE);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+        }
+        lastSortKey = -1;
+    }
+
+    @Override
+    public int count(boolean completed) {
+        return (int) DatabaseUtils.queryNumEntries(getReadableDatabase(), TABLE_TASKS,
+                COL_COMPLETED + " = ?", new String[]{completed ? "1" : "0"});
+    }
+
+    @Override
+    public List<TaskHeader> loadPage(boolean completed, TaskHeader after, int limit) {
+        String selection = COL_COMPLETED + " = ?";
+        String[] args;
+        if (after == null) {
+            args = new String[]{completed ? "1" : "0"};
+        } else {
+            selection += " AND " + COL_SORT_KEY + " < ?";
+            args = new String[]{completed ? "1" : "0", String.valueOf(after.getSortKey())};
+        }
+
+        List<TaskHeader> headers = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, HEADER_COLUMNS, selection, args,
+                null, null, COL_SORT_KEY + " DESC", String.valueOf(limit))) {
+            readHeaders(cursor, headers);
+        }
+        return headers;
+    }
+
+    // OFFSET still walks the skipped index entries; it is only used for jumps with no loaded row before.
+    @Override
+    public List<TaskHeader> loadRange(boolean completed, int offset, int limit) {
+        List<TaskHeader> headers = new ArrayList<>(limit);
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, HEADER_COLUMNS, COL_COMPLETED + " = ?",
+                new String[]{completed ? "1" : "0"}, null, null, COL_SORT_KEY + " DESC", offset + "," + limit)) {
+            readHeaders(cursor, headers);
+        }
+        return headers;
+    }
+
+    @Override
+    public List<TaskHeader> loadHeaders(boolean completed, Collection<String> ids) {
+        List<TaskHeader> headers = new ArrayList<>(ids.size());
+        List<String> chunk = new ArrayList<>(MAX_IDS_PER_QUERY);
+        for (String id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_IDS_PER_QUERY) {
+                queryHeaders(completed, chunk, headers);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            queryHeaders(completed, chunk, headers);
+        }
+        Collections.sort(headers, (a, b) -> Long.compare(b.getSortKey(), a.getSortKey()));
+        return headers;
+    }
+
+    private void queryHeaders(boolean completed, List<String> ids, List<TaskHeader> into) {
+        StringBuilder selection = new StringBuilder(COL_COMPLETED + " = ? AND " + COL_ID + " IN (");
+        String[] args = new String[ids.size() + 1];
+        args[0] = completed ? "1" : "0";
+        for (int i = 0; i < ids.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+            args[i + 1] = ids.get(i);
+        }
+        selection.append(')');
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, HEADER_COLUMNS,
+                selection.toString(), args, null, null, null)) {
+            readHeaders(cursor, into);
+        }
+    }
+
+    private static void readHeaders(Cursor cursor, List<TaskHeader> into) {
+        while (cursor.moveToNext()) {
+            TaskHeader header = new TaskHeader(
+                    cursor.getString(0),
+                    cursor.getString(1),
+                    cursor.getInt(2) != 0,
+                    cursor.getLong(3),
+                    cursor.getString(4),
+                    cursor.getString(5));
+            header.setSortKey(cursor.getLong(6));
+            into.add(header);
+        }
+    }
+
+    @Override
+    public List<Task> loadAll(boolean completed) {
+        List<Task> tasks = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, TASK_COLUMNS,
+                COL_COMPLETED + " = ?", new String[]{completed ? "1" : "0"},
+                null, null, COL_SORT_KEY + " DESC")) {
+            while (cursor.moveToNext()) {
+                tasks.add(readTask(cursor));
+            }
+        }
+        return tasks;
+    }
+
+    @Override
+    public Task getTask(String id) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, TASK_COLUMNS,
+                COL_ID + " = ?", new String[]{id}, null, null, null)) {
+            return cursor.moveToFirst() ? readTask(cursor) : null;
+        }
+    }
+
+    @Override
+    public List<String> loadImageRefs(Collection<String> ids) {
+        List<String> refs = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(MAX_IDS_PER_QUERY);
+        for (String id : ids) {
+            chunk.add(id);
+            if (chunk.size() == MAX_IDS_PER_QUERY) {
+                queryImageRefs(chunk, refs);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            queryImageRefs(chunk, refs);
+        }
+        return refs;
+    }
+
+    private void queryImageRefs(List<String> ids, List<String> into) {
+        StringBuilder selection = new StringBuilder(COL_ID + " IN (");
+        for (int i = 0; i < ids.size(); i++) {
+            selection.append(i == 0 ? "?" : ", ?");
+        }
+        selection.append(')');
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, new String[]{COL_DESCRIPTION},
+                selection.toString(), ids.toArray(new String[0]), null, null, null)) {
+            while (cursor.moveToNext()) {
+                into.addAll(NoteDocument.decode(cursor.getString(0)).imageRefs());
+            }
+        }
+    }
+
+    // Only descriptions that mention a blob can hold one.
+    @Override
+    public List<String> loadAllImageRefs() {
+        List<String> refs = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_TASKS, new String[]{COL_DESCRIPTION},
+                COL_DESCRIPTION + " LIKE ?", new String[]{"%" + ImageBlobStore.REF_PREFIX + "%"},
+                null, null, null)) {
+            while (cursor.moveToNext()) {
+                refs.addAll(NoteDocument.decode(cursor.getString(0)).imageRefs());
+            }
+        }
+        return refs;
+    }
+
+    private static Task readTask(Cursor cursor) {
+        Task task = new Task();
+        task.setId(cursor.getString(0));
+        task.setTitle(cursor.getString(1));
+        task.setDescription(cursor.getString(2));
+        task.setImageUri(cursor.getString(3));
+        task.setCompleted(cursor.getInt(4) != 0);
+        task.setCreatedAt(cursor.getLong(5));
+        return task;
+    }
+
+    @Override
+    public synchronized void apply(List<TaskOp> batch) {
+        SQLiteDatabase db = getWritableDatabase();
+        SQLiteStatement insert = compileInsert(db);
+        SQLiteStatement complete = db.compileStatement("UPDATE " + TABLE_TASKS + " SET "
+                + COL_COMPLETED + " = 1, " + COL_SORT_KEY + " = ? WHERE " + COL_ID + " = ?");
+        SQLiteStatement delete = db.compileStatement("DELETE FROM " + TABLE_TASKS
+                + " WHERE " + COL_ID + " = ?");
+
+        db.beginTransaction();
+        try {
+            for (TaskOp op : batch) {
+                switch (op.getType()) {
+                    case ADD:
+                        insert(insert, op.toTask(), nextSortKey(db));
+                        break;
+                    case UPDATE:
+                        update(db, op);
+                        break;
+                    case COMPLETE:
+                        complete.bindLong(1, nextSortKey(db));
+                        complete.bindString(2, op.getTaskId());
+                        complete.executeUpdateDelete();
+                        break;
+                    case DELETE:
+                        delete.bindString(1, op.getTaskId());
+                        delete.executeUpdateDelete();
+                        break;
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            insert.close();
+            complete.close();
+            delete.close();
+        }
+    }
+
+    private static SQLiteStatement compileInsert(SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TABLE_TASKS + " ("
+                + COL_ID + ", " + COL_TITLE + ", " + COL_DESCRIPTION + ", " + COL_IMAGE_URI + ", "
+                + COL_COMPLETED + ", " + COL_CREATED_AT + ", " + COL_SORT_KEY + ", "
+                + COL_PREVIEW + ", " + COL_FIRST_IMAGE + ", " + COL_PREVIEW_VERSION
+                + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+    }
+
+    private static void insert(SQLiteStatement insert, Task task, long sortKey) {
+        TaskHeader header = TaskHeader.from(task);
+        insert.clearBindings();
+        insert.bindString(1, task.getId());
+        bindNullable(insert, 2, task.getTitle());
+        bindNullable(insert, 3, task.getDescription() != null ? task.getDocument().encode() : null);
+        bindNullable(insert, 4, task.getImageUri());
+        insert.bindLong(5, task.isCompleted() ? 1 : 0);
+        insert.bindLong(6, task.getCreatedAt());
+        insert.bindLong(7, sortKey);
+        bindNullable(insert, 8, header.getPreview());
+        bindNullable(insert, 9, header.getFirstImage());
+        insert.bindLong(10, TaskPreview.VERSION);
+        insert.executeInsert();
+    }
+
+    private static void bindNullable(SQLiteStatement statement, int index, String value) {
+        if (value != null) {
+            statement.bindString(index, value);
+        } else {
+            statement.bindNull(index);
+        }
+    }
+
+    // Only the columns the op carries are written; the preview is derived again only when
+    // the description changed. Descriptions are always written in the document's stored form.
+    private static void update(SQLiteDatabase db, TaskOp op) {
+        ContentValues values = new ContentValues();
+        if (op.has(TaskOp.FIELD_TITLE)) values.put(COL_TITLE, op.title);
+        if (op.has(TaskOp.FIELD_DESCRIPTION)) {
+            NoteDocument document = NoteDocument.decode(op.description);
+            TaskPreview preview = TaskPreview.from(document);
+            values.put(COL_DESCRIPTION, op.description != null ? document.encode() : null);
+            values.put(COL_PREVIEW, preview.text);
+            values.put(COL_FIRST_IMAGE, preview.firstImage);
+            values.put(COL_PREVIEW_VERSION, TaskPreview.VERSION);
+        }
+        if (op.has(TaskOp.FIELD_IMAGE_URI)) values.put(COL_IMAGE_URI, op.imageUri);
+        if (op.has(TaskOp.FIELD_COMPLETED)) values.put(COL_COMPLETED, op.completed ? 1 : 0);
+        if (op.has(TaskOp.FIELD_CREATED_AT)) values.put(COL_CREATED_AT, op.createdAt);
+        if (values.size() == 0) return;
+        db.update(TABLE_TASKS, values, COL_ID + " = ?", new String[]{op.getTaskId()});
+    }
+
+    /**
+     * Derives previews again for rows written by an older {@link TaskPreview#VERSION}, a chunk
+     * at a time so writes can interleave, and moves descriptions still stored as HTML to the
+     * {@link NoteDocument} form on the way. Returns the number of rows updated.
+     */
+    public int refreshStalePreviews() {
+        int refreshed = 0;
+        while (true) {
+            int chunk = refreshPreviewChunk();
+            if (chunk == 0) return refreshed;
+            refreshed += chunk;
+        }
+    }
+
+    private synchronized int refreshPreviewChunk() {
+        SQLiteDatabase db = getWritableDatabase();
+        int count = 0;
+        db.beginTransaction();
+        try (Cursor cursor = db.query(TABLE_TASKS, new String[]{COL_ID, COL_DESCRIPTION},
+                COL_PREVIEW_VERSION + " < ?", new String[]{String.valueOf(TaskPreview.VERSION)},
+                null, null, null, String.valueOf(PREVIEW_REFRESH_CHUNK))) {
+            while (cursor.moveToNext()) {
+                String stored = cursor.getString(1);
+                NoteDocument document = NoteDocument.decode(stored);
+                TaskPreview preview = TaskPreview.from(document);
+                ContentValues values = new ContentValues();
+                if (stored != null && !NoteDocument.isEncoded(stored)) {
+                    values.put(COL_DESCRIPTION, document.encode());
+                }
+                values.put(COL_PREVIEW, preview.text);
+                values.put(COL_FIRST_IMAGE, preview.firstImage);
+                values.put(COL_PREVIEW_VERSION, TaskPreview.VERSION);
+                db.update(TABLE_TASKS, values, COL_ID + " = ?", new String[]{cursor.getString(0)});
+                count++;
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return count;
+    }
+
+    private long nextSortKey(SQLiteDatabase db) {
+        if (lastSortKey < 0) {
+            lastSortKey = DatabaseUtils.longForQuery(db,
+                    "SELECT IFNULL(MAX(" + COL_SORT_KEY + "), 0) FROM " + TABLE_TASKS, null);
+        }
+        return ++lastSortKey;
+    }
+}
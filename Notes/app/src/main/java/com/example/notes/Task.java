@@ -3,13 +3,15 @@ package com.example.notes;
 public class Task {
     private String id;
     private String title;
+    // The note body in NoteDocument's stored form; tasks saved before it still hold HTML.
     private String description;
     private boolean completed;
     private long createdAt;
     private String imageUri;
+    private transient NoteDocument document;
 
     public Task() {
-        this.id = String.valueOf(System.currentTimeMillis());
+        this.id = TaskIdGenerator.next();
         this.createdAt = System.currentTimeMillis();
         this.completed = false;
     }
@@ -27,7 +29,20 @@ public class Task {
     public void setTitle(String title) { this.title = title; }
 
     public String getDescription() { return description; }
-    public void setDescription(String description) { this.description = description; }
+    public void setDescription(String description) {
+        this.description = description;
+        this.document = null;
+    }
+
+    public NoteDocument getDocument() {
+        if (document == null) document = NoteDocument.decode(description);
+        return document;
+    }
+
+    public void setDocument(NoteDocument document) {
+        this.document = document;
+        this.description = document.encode();
+    }
 
     public boolean isCompleted() { return completed; }
     public void setCompleted(boolean completed) { this.completed = completed; }
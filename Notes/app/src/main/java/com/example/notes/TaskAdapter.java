@@ -1,29 +1,72 @@
 package com.example.notes;
 
-import android.text.Html;
+import android.os.Handler;
+import android.os.Looper;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 import com.bumptech.glide.Glide;
-import java.util.ArrayList;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import java.util.HashSet;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder> {
 
-    private List<Task> taskList;
+    static final int VIEW_TYPE_TASK = 0;
+
+    // Partial rebinds: only the row background, or only the text when the image stayed the same.
+    static final Object PAYLOAD_SELECTION = "selection";
+    static final Object PAYLOAD_TEXT = "text";
+
+    /** Rows are the same task when the ids match; they look the same when the shown fields match. */
+    static final DiffUtil.ItemCallback<TaskHeader> DIFF = new DiffUtil.ItemCallback<TaskHeader>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull TaskHeader oldItem, @NonNull TaskHeader newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull TaskHeader oldItem, @NonNull TaskHeader newItem) {
+            return oldItem.isCompleted() == newItem.isCompleted()
+                    && Objects.equals(oldItem.getTitle(), newItem.getTitle())
+                    && Objects.equals(oldItem.getPreview(), newItem.getPreview())
+                    && Objects.equals(oldItem.getFirstImage(), newItem.getFirstImage());
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull TaskHeader oldItem, @NonNull TaskHeader newItem) {
+            return Objects.equals(oldItem.getFirstImage(), newItem.getFirstImage()) ? PAYLOAD_TEXT : null;
+        }
+    };
+
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private TaskPageWindow current = new TaskPageWindow(0, TaskListLoader.PAGE_SIZE);
+    // The window being diffed against the current one. Pages loaded or dropped meanwhile go
+    // into it and are rebound once it is shown.
+    private TaskPageWindow pending;
+    private final Set<Integer> pagesChangedWhileDiffing = new HashSet<>();
+    private int generation;
     private OnTaskClickListener listener;
-    private List<Integer> selectedPositions = new ArrayList<>();
+    private final TaskSelection selection;
+    // The row a range selection starts from: the last one toggled.
+    private String anchorId;
     private boolean selectionMode = false;
 
     public interface OnTaskClickListener {
-        void onTaskClick(int position);
-        void onTaskLongClick(int position);
+        void onTaskClick(String taskId);
+        void onTaskLongClick(String taskId);
     }
 
     public static class TaskViewHolder extends RecyclerView.ViewHolder {
@@ -31,8 +74,11 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
         public TextView descriptionTextView;
         public ImageView taskImageView;
         public View itemContainer;
+        // Rows are shared between the lists through TaskRowPool, so a row answers to the
+        // adapter that bound it last rather than the one that created it.
+        private TaskAdapter adapter;
 
-        public TaskViewHolder(View itemView, final OnTaskClickListener listener) {
+        public TaskViewHolder(View itemView) {
             super(itemView);
             titleTextView = itemView.findViewById(R.id.task_title);
             descriptionTextView = itemView.findViewById(R.id.task_description);
@@ -40,29 +86,29 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
             itemContainer = itemView.findViewById(R.id.task_item_container);
 
             itemView.setOnClickListener(v -> {
-                if (listener != null) {
-                    int position = getAdapterPosition();
-                    if (position != RecyclerView.NO_POSITION) {
-                        listener.onTaskClick(position);
-                    }
+                TaskAdapter owner = adapter;
+                if (owner == null || owner.listener == null) return;
+                String taskId = owner.idAt(getAdapterPosition());
+                if (taskId != null) {
+                    owner.listener.onTaskClick(taskId);
                 }
             });
 
             itemView.setOnLongClickListener(v -> {
-                if (listener != null) {
-                    int position = getAdapterPosition();
-                    if (position != RecyclerView.NO_POSITION) {
-                        listener.onTaskLongClick(position);
-                        return true;
-                    }
+                TaskAdapter owner = adapter;
+                if (owner == null || owner.listener == null) return false;
+                String taskId = owner.idAt(getAdapterPosition());
+                if (taskId != null) {
+                    owner.listener.onTaskLongClick(taskId);
+                    return true;
                 }
                 return false;
             });
         }
     }
 
-    public TaskAdapter(List<Task> taskList, OnTaskClickListener listener) {
-        this.taskList = taskList;
+    public TaskAdapter(TaskSelection selection, OnTaskClickListener listener) {
+        this.selection = selection;
         this.listener = listener;
     }
 
@@ -71,119 +117,268 @@ public class TaskAdapter extends RecyclerView.Adapter<TaskAdapter.TaskViewHolder
     public TaskViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
         View view = LayoutInflater.from(parent.getContext())
                 .inflate(R.layout.item_task, parent, false);
-        return new TaskViewHolder(view, listener);
+        return new TaskViewHolder(view);
     }
 
     @Override
     public void onBindViewHolder(@NonNull TaskViewHolder holder, int position) {
-        Task task = taskList.get(position);
-        holder.titleTextView.setText(task.getTitle());
-
-        String description = task.getDescription();
-        if (description != null && !description.isEmpty()) {
-            String textOnly = description.replaceAll("<img[^>]*>", "[Изображение]");
-            String plainText = android.text.Html.fromHtml(textOnly).toString();
-
-            if (plainText.length() > 100) {
-                plainText = plainText.substring(0, 100) + "...";
-            }
-            holder.descriptionTextView.setText(plainText);
+        holder.adapter = this;
+        TaskHeader task = current.get(position);
+        if (task == null) {
+            bindPlaceholder(holder);
+            return;
+        }
+        bindText(holder, task);
 
-            if (description.contains("<img")) {
-                holder.taskImageView.setVisibility(View.VISIBLE);
-                loadFirstImage(holder.taskImageView, description);
-            } else {
-                holder.taskImageView.setVisibility(View.GONE);
-            }
+        if (task.hasImage()) {
+            holder.taskImageView.setVisibility(View.VISIBLE);
+            loadFirstImage(holder.taskImageView, task);
         } else {
-            holder.descriptionTextView.setText("");
             holder.taskImageView.setVisibility(View.GONE);
         }
 
-        if (selectedPositions.contains(position)) {
+        bindSelection(holder, task);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull TaskViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (payloads.isEmpty()) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        holder.adapter = this;
+        TaskHeader task = current.get(position);
+        if (task == null) {
+            bindPlaceholder(holder);
+            return;
+        }
+        if (payloads.contains(PAYLOAD_TEXT)) {
+            bindText(holder, task);
+        }
+        bindSelection(holder, task);
+    }
+
+    // A row whose page is not loaded yet: blank, and filled in by a rebind once it is.
+    private void bindPlaceholder(TaskViewHolder holder) {
+        holder.titleTextView.setText("");
+        holder.descriptionTextView.setText("");
+        Glide.with(holder.taskImageView.getContext()).clear(holder.taskImageView);
+        holder.taskImageView.setVisibility(View.GONE);
+        holder.itemContainer.setBackgroundResource(R.drawable.task_item_background);
+    }
+
+    private void bindText(TaskViewHolder holder, TaskHeader task) {
+        holder.titleTextView.setText(task.getTitle());
+        holder.descriptionTextView.setText(task.getPreview());
+    }
+
+    private void bindSelection(TaskViewHolder holder, TaskHeader task) {
+        if (selection.isSelected(task.getId())) {
             holder.itemContainer.setBackgroundResource(R.drawable.task_item_background_selected);
         } else {
             holder.itemContainer.setBackgroundResource(R.drawable.task_item_background);
         }
     }
 
-    private void loadFirstImage(ImageView imageView, String html) {
-        try {
-            Pattern pattern = Pattern.compile("src=\"data:image/jpeg;base64,([^\"]+)\"");
-            Matcher matcher = pattern.matcher(html);
+    // Decoded at the view's size off the main thread and served from Glide's caches on rebind.
+    private void loadFirstImage(ImageView imageView, TaskHeader task) {
+        Glide.with(imageView.getContext())
+                .asBitmap()
+                .load(new TaskThumbnail(task.getId(), task.getFirstImage()))
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                .centerCrop()
+                .placeholder(R.drawable.ic_default_image)
+                .error(R.drawable.ic_default_image)
+                .into(imageView);
+    }
+
+    @Override
+    public int getItemCount() {
+        return current.size();
+    }
 
-            if (matcher.find()) {
-                String base64 = matcher.group(1);
-                byte[] decodedBytes = android.util.Base64.decode(base64, android.util.Base64.DEFAULT);
-                android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+    private String idAt(int position) {
+        if (position == RecyclerView.NO_POSITION || position >= current.size()) return null;
+        TaskHeader task = current.get(position);
+        return task != null ? task.getId() : null;
+    }
 
-                com.bumptech.glide.Glide.with(imageView.getContext())
-                        .load(bitmap)
-                        .centerCrop()
-                        .placeholder(R.drawable.ic_default_image)
-                        .error(R.drawable.ic_default_image)
-                        .into(imageView);
-            }
-        } catch (Exception e) {
-            imageView.setVisibility(View.GONE);
+    /**
+     * Shows another window of the list, e.g. after the tasks changed. The two are compared on a
+     * background thread and only the moves, inserts and changes found are dispatched, so
+     * unchanged rows are never rebound.
+     */
+    public void submitWindow(TaskPageWindow next) {
+        int submitted = ++generation;
+        TaskPageWindow from = current.copy();
+        TaskPageWindow to = next.copy();
+        pending = next;
+        pagesChangedWhileDiffing.clear();
+        DIFF_EXECUTOR.execute(() -> {
+            WindowDiff diff = WindowDiff.compute(from, to);
+            mainHandler.post(() -> {
+                if (submitted != generation) return;
+                current = next;
+                pending = null;
+                diff.dispatchTo(this);
+                for (int page : pagesChangedWhileDiffing) {
+                    notifyItemRangeChanged(current.pageStart(page), current.pageLength(page));
+                }
+                pagesChangedWhileDiffing.clear();
+            });
+        });
+    }
+
+    /** Fills in the placeholders of a page that has been loaded. */
+    public void putPage(int page, List<TaskHeader> rows) {
+        if (pending != null) {
+            pending.put(page, rows);
+            pagesChangedWhileDiffing.add(page);
+            return;
         }
+        current.put(page, rows);
+        notifyItemRangeChanged(current.pageStart(page), current.pageLength(page));
     }
 
-    private String extractFirstImageBase64(String html) {
-        int start = html.indexOf("base64,");
-        if (start != -1) {
-            start += 7;
-            int end = html.indexOf("\"", start);
-            if (end != -1) {
-                return html.substring(start, end);
-            }
+    /** Turns a page that was dropped back into placeholders. */
+    public void removePage(int page) {
+        if (pending != null) {
+            pending.remove(page);
+            pagesChangedWhileDiffing.add(page);
+            return;
         }
-        return null;
+        current.remove(page);
+        notifyItemRangeChanged(current.pageStart(page), current.pageLength(page));
     }
 
-    private void loadBase64Image(ImageView imageView, String base64) {
-        try {
-            byte[] decodedBytes = android.util.Base64.decode(base64, android.util.Base64.DEFAULT);
-            android.graphics.Bitmap bitmap = android.graphics.BitmapFactory.decodeByteArray(decodedBytes, 0, decodedBytes.length);
+    /**
+     * The changes between two windows. Only the span holding loaded rows on either side is
+     * compared: the rows before it are placeholders in both, and the rows after it are
+     * placeholders whose count may only have grown or shrunk.
+     */
+    private static final class WindowDiff {
+        private final int start;
+        private final DiffUtil.DiffResult result;
+        private final int tailPosition;
+        private final int tailDelta;
 
-            Glide.with(imageView.getContext())
-                    .load(bitmap)
-                    .centerCrop()
-                    .placeholder(R.drawable.ic_default_image)
-                    .error(R.drawable.ic_default_image)
-                    .into(imageView);
-        } catch (Exception e) {
-            imageView.setVisibility(View.GONE);
+        private WindowDiff(int start, DiffUtil.DiffResult result, int tailPosition, int tailDelta) {
+            this.start = start;
+            this.result = result;
+            this.tailPosition = tailPosition;
+            this.tailDelta = tailDelta;
         }
-    }
 
-    @Override
-    public int getItemCount() {
-        return taskList.size();
+        static WindowDiff compute(TaskPageWindow from, TaskPageWindow to) {
+            int start = Math.min(from.loadedStart(), to.loadedStart());
+            int fromEnd = Math.max(from.loadedEnd(), start);
+            int toEnd = Math.max(to.loadedEnd(), start);
+            DiffUtil.DiffResult result = DiffUtil.calculateDiff(new DiffUtil.Callback() {
+                @Override
+                public int getOldListSize() {
+                    return fromEnd - start;
+                }
+
+                @Override
+                public int getNewListSize() {
+                    return toEnd - start;
+                }
+
+                @Override
+                public boolean areItemsTheSame(int oldPosition, int newPosition) {
+                    TaskHeader oldItem = from.get(start + oldPosition);
+                    TaskHeader newItem = to.get(start + newPosition);
+                    if (oldItem == null || newItem == null) return oldItem == newItem;
+                    return DIFF.areItemsTheSame(oldItem, newItem);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    TaskHeader oldItem = from.get(start + oldPosition);
+                    TaskHeader newItem = to.get(start + newPosition);
+                    if (oldItem == null || newItem == null) return oldItem == newItem;
+                    return DIFF.areContentsTheSame(oldItem, newItem);
+                }
+
+                @Override
+                public Object getChangePayload(int oldPosition, int newPosition) {
+                    TaskHeader oldItem = from.get(start + oldPosition);
+                    TaskHeader newItem = to.get(start + newPosition);
+                    if (oldItem == null || newItem == null) return null;
+                    return DIFF.getChangePayload(oldItem, newItem);
+                }
+            });
+            int tailDelta = (to.size() - toEnd) - (from.size() - fromEnd);
+            return new WindowDiff(start, result, toEnd, tailDelta);
+        }
+
+        void dispatchTo(RecyclerView.Adapter<?> adapter) {
+            result.dispatchUpdatesTo(new ListUpdateCallback() {
+                @Override
+                public void onInserted(int position, int count) {
+                    adapter.notifyItemRangeInserted(start + position, count);
+                }
+
+                @Override
+                public void onRemoved(int position, int count) {
+                    adapter.notifyItemRangeRemoved(start + position, count);
+                }
+
+                @Override
+                public void onMoved(int fromPosition, int toPosition) {
+                    adapter.notifyItemMoved(start + fromPosition, start + toPosition);
+                }
+
+                @Override
+                public void onChanged(int position, int count, Object payload) {
+                    adapter.notifyItemRangeChanged(start + position, count, payload);
+                }
+            });
+            if (tailDelta > 0) {
+                adapter.notifyItemRangeInserted(tailPosition, tailDelta);
+            } else if (tailDelta < 0) {
+                adapter.notifyItemRangeRemoved(tailPosition, -tailDelta);
+            }
+        }
     }
 
-    public void updateTasks(List<Task> tasks) {
-        this.taskList = tasks;
-        notifyDataSetChanged();
+    public void toggleSelection(String taskId) {
+        selection.toggle(taskId);
+        anchorId = taskId;
+        Integer position = current.positionOf(taskId);
+        if (position != null) {
+            notifyItemChanged(position, PAYLOAD_SELECTION);
+        }
     }
 
-    public void toggleSelection(int position) {
-        if (selectedPositions.contains(position)) {
-            selectedPositions.remove((Integer) position);
-        } else {
-            selectedPositions.add(position);
+    /** Selects every row between the last toggled one and {@code taskId}. */
+    public void selectRange(String taskId) {
+        Integer from = anchorId != null ? current.positionOf(anchorId) : null;
+        Integer to = current.positionOf(taskId);
+        if (from == null || to == null) {
+            toggleSelection(taskId);
+            return;
         }
-        notifyItemChanged(position);
+        selection.selectRange(current.asList(), from, to);
+        anchorId = taskId;
+        notifyItemRangeChanged(Math.min(from, to), Math.abs(to - from) + 1, PAYLOAD_SELECTION);
+    }
+
+    // RecyclerView only rebinds the rows it has bound, so a whole-list payload costs a screenful.
+    public void selectAll() {
+        selection.selectAll();
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
     }
 
     public void clearSelection() {
-        selectedPositions.clear();
+        selection.clear();
+        anchorId = null;
         selectionMode = false;
-        notifyDataSetChanged();
+        notifyItemRangeChanged(0, getItemCount(), PAYLOAD_SELECTION);
     }
 
-    public List<Integer> getSelectedPositions() {
-        return new ArrayList<>(selectedPositions);
+    public TaskSelection getSelection() {
+        return selection;
     }
 
     public void setSelectionMode(boolean mode) {
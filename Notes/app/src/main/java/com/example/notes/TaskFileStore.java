@@ -0,0 +1,209 @@
+package com.example.notes;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Stores every task as its own JSON record (records/&lt;id&gt;.json) plus a small
+ * index file that keeps the order of the active and completed lists as {@link TaskHeader}s.
+ * A mutation only rewrites the records it touched and the index.
+ *
+ * The index is the binary {@link MappedTaskIndex} (index.bin). Older JSON indexes
+ * (index.json) are still read and replaced by the binary one on the next save.
+ */
+public class TaskFileStore {
+    private static final String INDEX_FILE = "index.bin";
+    private static final String JSON_INDEX_FILE = "index.json";
+    private static final String RECORDS_DIR = "records";
+    private static final int INDEX_VERSION = 2;
+
+    public static class Index {
+        int version = INDEX_VERSION;
+        List<TaskHeader> tasks = new ArrayList<>();
+        List<TaskHeader> completed = new ArrayList<>();
+        transient List<String> legacyTaskIds;
+        transient List<String> legacyCompletedIds;
+
+        public List<TaskHeader> getTasks() { return tasks; }
+        public List<TaskHeader> getCompleted() { return completed; }
+
+        /** Version 1 indexes only listed ids; their headers have to be rebuilt from the records. */
+        public boolean isLegacy() { return version < INDEX_VERSION; }
+        public List<String> getLegacyTaskIds() { return legacyTaskIds; }
+        public List<String> getLegacyCompletedIds() { return legacyCompletedIds; }
+    }
+
+    private final File rootDir;
+    private final File recordsDir;
+    private final Gson gson = new Gson();
+
+    public TaskFileStore(File rootDir) {
+        this.rootDir = rootDir;
+        this.recordsDir = new File(rootDir, RECORDS_DIR);
+        recordsDir.mkdirs();
+    }
+
+    public boolean hasIndex() {
+        return new File(rootDir, INDEX_FILE).exists() || new File(rootDir, JSON_INDEX_FILE).exists();
+    }
+
+    /**
+     * Maps the binary index for reading. Returns null when there is none yet or it is a
+     * legacy id-only index that still has to be migrated.
+     */
+    public MappedTaskIndex mapIndex() {
+        File file = new File(rootDir, INDEX_FILE);
+        if (!file.exists()) {
+            Index index = loadJsonIndex();
+            if (index == null || index.isLegacy()) return null;
+            saveIndex(index);
+        }
+        try {
+            return MappedTaskIndex.open(file);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public Index loadIndex() {
+        File file = new File(rootDir, INDEX_FILE);
+        if (file.exists()) {
+            try {
+                MappedTaskIndex mapped = MappedTaskIndex.open(file);
+                Index index = new Index();
+                index.tasks = mapped.headers(false);
+                index.completed = mapped.headers(true);
+                return index;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        Index index = loadJsonIndex();
+        return index != null ? index : new Index();
+    }
+
+    private Index loadJsonIndex() {
+        File file = new File(rootDir, JSON_INDEX_FILE);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            JsonElement element = JsonParser.parseReader(reader);
+            if (!element.isJsonObject()) {
+                return new Index();
+            }
+            JsonObject json = element.getAsJsonObject();
+            int version = json.has("version") ? json.get("version").getAsInt() : 1;
+            if (version < INDEX_VERSION) {
+                Index legacy = new Index();
+                legacy.version = version;
+                legacy.legacyTaskIds = readIds(json, "tasks");
+                legacy.legacyCompletedIds = readIds(json, "completed");
+                return legacy;
+            }
+
+            Index index = gson.fromJson(json, Index.class);
+            if (index.tasks == null) index.tasks = new ArrayList<>();
+            if (index.completed == null) index.completed = new ArrayList<>();
+            return index;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return new Index();
+        }
+    }
+
+    private static List<String> readIds(JsonObject json, String key) {
+        List<String> ids = new ArrayList<>();
+        if (json.has(key) && json.get(key).isJsonArray()) {
+            for (JsonElement id : json.getAsJsonArray(key)) {
+                ids.add(id.getAsString());
+            }
+        }
+        return ids;
+    }
+
+    public void saveIndex(List<Task> tasks, List<Task> completedTasks) {
+        Index index = new Index();
+        for (Task task : tasks) {
+            index.tasks.add(TaskHeader.from(task));
+        }
+        for (Task task : completedTasks) {
+            index.completed.add(TaskHeader.from(task));
+        }
+        saveIndex(index);
+    }
+
+    public void saveIndex(Index index) {
+        try {
+            MappedTaskIndex.write(new File(rootDir, INDEX_FILE), index.tasks, index.completed);
+            new File(rootDir, JSON_INDEX_FILE).delete();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public List<Task> loadTasks(List<String> ids) {
+        List<Task> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            Task task = loadTask(id);
+            if (task != null) {
+                result.add(task);
+            }
+        }
+        return result;
+    }
+
+    public Task loadTask(String id) {
+        File file = recordFile(id);
+        if (!file.exists()) {
+            return null;
+        }
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+            return gson.fromJson(reader, Task.class);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    public void saveTask(Task task) {
+        writeAtomically(recordFile(task.getId()), gson.toJson(task));
+    }
+
+    public void deleteTask(String id) {
+        recordFile(id).delete();
+    }
+
+    private File recordFile(String id) {
+        return new File(recordsDir, id.replaceAll("[^A-Za-z0-9_-]", "_") + ".json");
+    }
+
+    private void writeAtomically(File target, String content) {
+        File tmp = new File(target.getParentFile(), target.getName() + ".tmp");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8)) {
+            writer.write(content);
+        } catch (IOException e) {
+            e.printStackTrace();
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(target)) {
+            target.delete();
+            tmp.renameTo(target);
+        }
+    }
+}
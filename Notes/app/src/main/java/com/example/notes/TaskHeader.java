@@ -0,0 +1,64 @@
+package com.example.notes;
+
+/**
+ * The part of a task the lists need: kept in the index and loaded at startup, while the
+ * full description stays in the task record until a note is opened.
+ */
+public class TaskHeader {
+    private String id;
+    private String title;
+    private boolean completed;
+    private long createdAt;
+    private String preview;
+    private String firstImage;
+    // Position in the list for stores that page by key; not part of the file index.
+    private transient long sortKey;
+
+    private TaskHeader() {
+    }
+
+    TaskHeader(String id, String title, boolean completed, long createdAt, String preview, String firstImage) {
+        this.id = id;
+        this.title = title;
+        this.completed = completed;
+        this.createdAt = createdAt;
+        this.preview = preview;
+        this.firstImage = firstImage;
+    }
+
+    public static TaskHeader from(Task task) {
+        TaskHeader header = new TaskHeader();
+        header.id = task.getId();
+        header.title = task.getTitle();
+        header.completed = task.isCompleted();
+        header.createdAt = task.getCreatedAt();
+        TaskPreview preview = TaskPreview.from(task.getDocument());
+        header.preview = preview.text;
+        header.firstImage = preview.firstImage;
+        return header;
+    }
+
+    /** A copy with another title; the preview only depends on the description. */
+    public TaskHeader withTitle(String title) {
+        TaskHeader header = new TaskHeader(id, title, completed, createdAt, preview, firstImage);
+        header.sortKey = sortKey;
+        return header;
+    }
+
+    public String getId() { return id; }
+    public String getTitle() { return title; }
+
+    public boolean isCompleted() { return completed; }
+    public void setCompleted(boolean completed) { this.completed = completed; }
+
+    public long getCreatedAt() { return createdAt; }
+    public String getPreview() { return preview; }
+    public String getFirstImage() { return firstImage; }
+
+    public long getSortKey() { return sortKey; }
+    void setSortKey(long sortKey) { this.sortKey = sortKey; }
+
+    public boolean hasImage() {
+        return firstImage != null;
+    }
+}
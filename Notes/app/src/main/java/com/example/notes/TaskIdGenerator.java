@@ -0,0 +1,30 @@
+package com.example.notes;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Unique, increasing task ids without locking. An id is the current time in milliseconds
+ * times 1000 plus a counter, so up to 1000 tasks per millisecond keep time order, and a
+ * burst beyond that borrows from the next milliseconds instead of repeating an id.
+ * Ids written before this (plain milliseconds) are far below this range and never collide.
+ */
+public final class TaskIdGenerator {
+    private static final AtomicLong last = new AtomicLong();
+
+    private TaskIdGenerator() {
+    }
+
+    public static long nextLong() {
+        while (true) {
+            long previous = last.get();
+            long next = Math.max(System.currentTimeMillis() * 1000, previous + 1);
+            if (last.compareAndSet(previous, next)) {
+                return next;
+            }
+        }
+    }
+
+    public static String next() {
+        return String.valueOf(nextLong());
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.notes;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of {@link TaskOp}s. Each record is framed as
+ * [int payload length][int crc32][payload]. Reading stops at the first record that is
+ * incomplete or fails its checksum and the file is cut back to the last good record,
+ * so a write torn by process death is dropped the same way on every start.
+ *
+ * Compaction works on a rotated copy (journal.compacting) so appends never wait for it.
+ */
+public class TaskJournal {
+    private static final String ACTIVE_FILE = "journal.log";
+    private static final String COMPACTING_FILE = "journal.compacting";
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 64 * 1024 * 1024;
+
+    private final File activeFile;
+    private final File compactingFile;
+
+    public TaskJournal(File dir) {
+        dir.mkdirs();
+        this.activeFile = new File(dir, ACTIVE_FILE);
+        this.compactingFile = new File(dir, COMPACTING_FILE);
+    }
+
+    public synchronized void append(List<TaskOp> ops) throws IOException {
+        if (ops.isEmpty()) return;
+        FileOutputStream fileOut = new FileOutputStream(activeFile, true);
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(fileOut));
+            CRC32 crc = new CRC32();
+            for (TaskOp op : ops) {
+                byte[] payload = op.encode();
+                crc.reset();
+                crc.update(payload, 0, payload.length);
+                out.writeInt(payload.length);
+                out.writeInt((int) crc.getValue());
+                out.write(payload);
+            }
+            out.flush();
+            fileOut.getFD().sync();
+        } finally {
+            fileOut.close();
+        }
+    }
+
+    public synchronized long size() {
+        return activeFile.length();
+    }
+
+    public synchronized boolean hasPendingCompaction() {
+        return compactingFile.exists();
+    }
+
+    /**
+     * Moves the active journal aside for compaction. Returns false when there is nothing
+     * to compact. A compaction left over from a previous process is resumed as is.
+     */
+    public synchronized boolean rotateForCompaction() {
+        if (compactingFile.exists()) return true;
+        if (!activeFile.exists() || activeFile.length() == 0) return false;
+        return activeFile.renameTo(compactingFile);
+    }
+
+    public List<TaskOp> readCompacting() throws IOException {
+        return read(compactingFile);
+    }
+
+    public synchronized void finishCompaction() {
+        compactingFile.delete();
+    }
+
+    /** Ops that are not yet folded into the snapshot, oldest first. */
+    public synchronized List<TaskOp> readActive() throws IOException {
+        return read(activeFile);
+    }
+
+    static List<TaskOp> read(File file) throws IOException {
+        List<TaskOp> ops = new ArrayList<>();
+        if (!file.exists()) return ops;
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long offset = 0;
+            CRC32 crc = new CRC32();
+
+            while (offset + HEADER_SIZE <= length) {
+                raf.seek(offset);
+                int payloadLength = raf.readInt();
+                int checksum = raf.readInt();
+                if (payloadLength < 0 || payloadLength > MAX_RECORD_SIZE
+                        || offset + HEADER_SIZE + payloadLength > length) {
+                    break;
+                }
+                byte[] payload = new byte[payloadLength];
+                raf.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, payloadLength);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                TaskOp op;
+                try {
+                    op = TaskOp.decode(payload);
+                } catch (IOException e) {
+                    break;
+                }
+                ops.add(op);
+                offset += HEADER_SIZE + payloadLength;
+            }
+
+            if (offset < length) {
+                raf.setLength(offset);
+            }
+        }
+        return ops;
+    }
+}
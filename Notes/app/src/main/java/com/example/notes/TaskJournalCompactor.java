@@ -0,0 +1,100 @@
+package com.example.notes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Folds the journal into the per-task snapshot kept by {@link TaskFileStore} once it
+ * grows past a size threshold. Runs on its own background thread.
+ */
+public class TaskJournalCompactor {
+    public static final long DEFAULT_THRESHOLD_BYTES = 256 * 1024;
+
+    public interface Listener {
+        /** Called on the compacting thread once the given ops are part of the snapshot. */
+        void onCompacted(List<TaskOp> ops);
+    }
+
+    private final TaskJournal journal;
+    private final TaskFileStore store;
+    private final long thresholdBytes;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile Listener listener;
+
+    public TaskJournalCompactor(TaskJournal journal, TaskFileStore store) {
+        this(journal, store, DEFAULT_THRESHOLD_BYTES);
+    }
+
+    public TaskJournalCompactor(TaskJournal journal, TaskFileStore store, long thresholdBytes) {
+        this.journal = journal;
+        this.store = store;
+        this.thresholdBytes = thresholdBytes;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    public void maybeCompact() {
+        if (journal.size() < thresholdBytes) return;
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    compactNow();
+                } finally {
+                    scheduled.set(false);
+                }
+            });
+        }
+    }
+
+    /** Finishes a compaction that was interrupted by process death. */
+    public void resumePending() {
+        if (journal.hasPendingCompaction()) {
+            compactNow();
+        }
+    }
+
+    public synchronized void compactNow() {
+        if (!journal.rotateForCompaction()) return;
+        try {
+            List<TaskOp> ops = journal.readCompacting();
+            fold(ops);
+            journal.finishCompaction();
+            Listener current = listener;
+            if (current != null) {
+                current.onCompacted(ops);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void fold(List<TaskOp> ops) {
+        TaskFileStore.Index index = store.loadIndex();
+        OrderedTaskHeaders tasks = new OrderedTaskHeaders(index.tasks);
+        OrderedTaskHeaders completed = new OrderedTaskHeaders(index.completed);
+        Map<String, Task> touched = new LinkedHashMap<>();
+        TaskOpApplier applier = new TaskOpApplier(tasks, completed, touched, store::loadTask);
+        for (TaskOp op : ops) {
+            applier.apply(op);
+        }
+
+        for (Task task : touched.values()) {
+            store.saveTask(task);
+        }
+        for (String id : applier.getDeleted()) {
+            store.deleteTask(id);
+        }
+        index.tasks = new ArrayList<>(tasks);
+        index.completed = new ArrayList<>(completed);
+        store.saveIndex(index);
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.notes;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.text.Editable;
+import android.text.TextWatcher;
+import android.widget.EditText;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Pages one task list into a {@link TaskAdapter} through a {@link TaskPageWindow}: the list
+ * has its full length at once, the pages around the visible rows are loaded as the user
+ * scrolls, and pages that fall far behind are dropped again. While a search query is set the
+ * list shows all matches instead. Store reads run on a background thread and their results
+ * are applied on the main thread.
+ */
+public class TaskListLoader extends RecyclerView.OnScrollListener {
+    public static final int PAGE_SIZE = 50;
+    // Pages loaded ahead on either side of the visible ones, and how many pages away from them
+    // a loaded page may get before it is dropped.
+    static final int PREFETCH_PAGES = 1;
+    static final int KEEP_PAGES = 3;
+    private static final long SEARCH_DELAY_MS = 150;
+    private static final ExecutorService LOAD_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    public interface SelectionCallback {
+        void onResolved(List<String> ids);
+    }
+
+    private final DataManager dataManager;
+    private final boolean completed;
+    private final TaskAdapter adapter;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private RecyclerView recyclerView;
+    private TaskPageWindow window = new TaskPageWindow(0, PAGE_SIZE);
+    // Pages of the current window being read in the background.
+    private final Set<Integer> loadingPages = new HashSet<>();
+    private List<TaskHeader> searchResults;
+    private boolean loadPosted;
+    private String query = "";
+    private int generation;
+
+    public TaskListLoader(DataManager dataManager, boolean completed, TaskAdapter adapter) {
+        this.dataManager = dataManager;
+        this.completed = completed;
+        this.adapter = adapter;
+    }
+
+    public void attach(RecyclerView recyclerView) {
+        this.recyclerView = recyclerView;
+        recyclerView.addOnScrollListener(this);
+    }
+
+    /** Re-runs the search as the user types, once typing pauses. */
+    public void attachSearch(EditText searchField) {
+        Runnable search = () -> setQuery(searchField.getText().toString());
+        searchField.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                searchField.removeCallbacks(search);
+                searchField.postDelayed(search, SEARCH_DELAY_MS);
+            }
+        });
+    }
+
+    public void setQuery(String query) {
+        String trimmed = query.trim();
+        if (trimmed.equals(this.query)) return;
+        this.query = trimmed;
+        reload();
+    }
+
+    /**
+     * Reloads the list in the background, keeping the pages around the visible rows loaded.
+     * The current rows stay on screen until the new ones are read; of overlapping reloads only
+     * the last is shown.
+     */
+    public void reload() {
+        int reload = ++generation;
+        if (!query.isEmpty()) {
+            dataManager.search(completed, query, results -> {
+                if (reload != generation) return;
+                searchResults = results;
+                window = TaskPageWindow.of(results, PAGE_SIZE);
+                loadingPages.clear();
+                adapter.submitWindow(window.copy());
+            });
+            return;
+        }
+
+        int[] visible = visibleRange();
+        LOAD_EXECUTOR.execute(() -> {
+            TaskPageWindow loaded = new TaskPageWindow(
+                    completed ? dataManager.getCompletedTaskCount() : dataManager.getTaskCount(), PAGE_SIZE);
+            for (int page : loaded.missingPages(visible[0], visible[1], PREFETCH_PAGES)) {
+                loaded.put(page, fetch(page, loaded.lastRowBefore(page), loaded.pageStart(page)));
+            }
+            mainHandler.post(() -> {
+                if (reload != generation) return;
+                searchResults = null;
+                window = loaded;
+                loadingPages.clear();
+                adapter.submitWindow(loaded.copy());
+            });
+        });
+    }
+
+    /**
+     * Starts loading the pages around the visible rows that are missing, which show placeholders
+     * until they arrive, and drops the pages far from them.
+     */
+    public void loadVisiblePages() {
+        loadPosted = false;
+        if (searchResults != null) return;
+        int[] visible = visibleRange();
+        for (int page : window.missingPages(visible[0], visible[1], PREFETCH_PAGES)) {
+            if (!loadingPages.add(page)) continue;
+            TaskPageWindow target = window;
+            TaskHeader after = target.lastRowBefore(page);
+            int start = target.pageStart(page);
+            LOAD_EXECUTOR.execute(() -> {
+                List<TaskHeader> rows = fetch(page, after, start);
+                mainHandler.post(() -> {
+                    // A reload replaced the window meanwhile and reads its own pages.
+                    if (window != target) return;
+                    loadingPages.remove(page);
+                    window.put(page, rows);
+                    adapter.putPage(page, rows);
+                });
+            });
+        }
+        for (int page : window.farPages(visible[0], visible[1], KEEP_PAGES)) {
+            window.remove(page);
+            adapter.removePage(page);
+        }
+    }
+
+    // Pages in order usually follow a loaded one, which is a keyset query; a jump needs an offset.
+    private List<TaskHeader> fetch(int page, TaskHeader after, int start) {
+        if (page == 0 || after != null) {
+            return dataManager.loadPage(completed, after, PAGE_SIZE);
+        }
+        return dataManager.loadRange(completed, start, PAGE_SIZE);
+    }
+
+    private int[] visibleRange() {
+        if (recyclerView != null && recyclerView.getLayoutManager() instanceof LinearLayoutManager) {
+            LinearLayoutManager layoutManager = (LinearLayoutManager) recyclerView.getLayoutManager();
+            int first = layoutManager.findFirstVisibleItemPosition();
+            int last = layoutManager.findLastVisibleItemPosition();
+            if (first != RecyclerView.NO_POSITION) {
+                return new int[]{first, Math.max(first, last)};
+            }
+        }
+        return new int[]{0, 0};
+    }
+
+    /**
+     * Delivers the selected ids on the main thread. With everything selected they are resolved
+     * in the background against the whole list, or all search results, so a batch covers the
+     * rows that are not loaded too; later changes to the selection do not affect the result.
+     */
+    public void resolveSelection(TaskSelection selection, SelectionCallback callback) {
+        if (!selection.isAll()) {
+            callback.onResolved(selection.explicitIds());
+            return;
+        }
+        TaskSelection snapshot = selection.copy();
+        List<TaskHeader> results = searchResults;
+        int size = window.size();
+        LOAD_EXECUTOR.execute(() -> {
+            List<TaskHeader> rows = results != null ? results : dataManager.loadPage(completed, null, size);
+            List<String> ids = snapshot.resolve(rows);
+            mainHandler.post(() -> callback.onResolved(ids));
+        });
+    }
+
+    // Also called after every layout. Loading changes the adapter, which must wait until the
+    // layout or scroll pass is over.
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (loadPosted) return;
+        loadPosted = true;
+        recyclerView.post(this::loadVisiblePages);
+    }
+}
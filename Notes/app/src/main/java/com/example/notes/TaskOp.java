@@ -0,0 +1,159 @@
+package com.example.notes;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single mutation of the task lists, small enough to be appended to the journal.
+ * Only the fields flagged in {@link #fields} are carried.
+ */
+public class TaskOp {
+    public enum Type { ADD, UPDATE, COMPLETE, DELETE }
+
+    static final int FIELD_TITLE = 1;
+    static final int FIELD_DESCRIPTION = 1 << 1;
+    static final int FIELD_IMAGE_URI = 1 << 2;
+    static final int FIELD_CREATED_AT = 1 << 3;
+    static final int FIELD_COMPLETED = 1 << 4;
+
+    private static final int ALL_FIELDS = FIELD_TITLE | FIELD_DESCRIPTION | FIELD_IMAGE_URI
+            | FIELD_CREATED_AT | FIELD_COMPLETED;
+
+    final Type type;
+    final String taskId;
+    int fields;
+    String title;
+    String description;
+    String imageUri;
+    long createdAt;
+    boolean completed;
+
+    private TaskOp(Type type, String taskId, int fields) {
+        this.type = type;
+        this.taskId = taskId;
+        this.fields = fields;
+    }
+
+    public static TaskOp add(Task task) {
+        TaskOp op = new TaskOp(Type.ADD, task.getId(), ALL_FIELDS);
+        op.title = task.getTitle();
+        op.description = task.getDescription();
+        op.imageUri = task.getImageUri();
+        op.createdAt = task.getCreatedAt();
+        op.completed = task.isCompleted();
+        return op;
+    }
+
+    public static TaskOp update(Task task) {
+        return update(task, true);
+    }
+
+    /** Leaves the description out when it did not change, so its preview is not derived again. */
+    public static TaskOp update(Task task, boolean descriptionChanged) {
+        int fields = FIELD_TITLE | FIELD_IMAGE_URI;
+        if (descriptionChanged) fields |= FIELD_DESCRIPTION;
+        TaskOp op = new TaskOp(Type.UPDATE, task.getId(), fields);
+        op.title = task.getTitle();
+        op.description = descriptionChanged ? task.getDescription() : null;
+        op.imageUri = task.getImageUri();
+        return op;
+    }
+
+    public static TaskOp complete(String taskId) {
+        return new TaskOp(Type.COMPLETE, taskId, 0);
+    }
+
+    public static TaskOp delete(String taskId) {
+        return new TaskOp(Type.DELETE, taskId, 0);
+    }
+
+    public Type getType() { return type; }
+    public String getTaskId() { return taskId; }
+
+    boolean has(int field) {
+        return (fields & field) != 0;
+    }
+
+    public Task toTask() {
+        Task task = new Task();
+        task.setId(taskId);
+        applyFields(task);
+        return task;
+    }
+
+    public void applyFields(Task task) {
+        if ((fields & FIELD_TITLE) != 0) task.setTitle(title);
+        if ((fields & FIELD_DESCRIPTION) != 0) task.setDescription(description);
+        if ((fields & FIELD_IMAGE_URI) != 0) task.setImageUri(imageUri);
+        if ((fields & FIELD_CREATED_AT) != 0) task.setCreatedAt(createdAt);
+        if ((fields & FIELD_COMPLETED) != 0) task.setCompleted(completed);
+    }
+
+    /** Folds a later UPDATE of the same task into this ADD or UPDATE. */
+    void absorb(TaskOp later) {
+        if ((later.fields & FIELD_TITLE) != 0) title = later.title;
+        if ((later.fields & FIELD_DESCRIPTION) != 0) description = later.description;
+        if ((later.fields & FIELD_IMAGE_URI) != 0) imageUri = later.imageUri;
+        if ((later.fields & FIELD_CREATED_AT) != 0) createdAt = later.createdAt;
+        if ((later.fields & FIELD_COMPLETED) != 0) completed = later.completed;
+        fields |= later.fields;
+    }
+
+    byte[] encode() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(type.ordinal());
+        writeString(out, taskId);
+        out.writeByte(fields);
+        if ((fields & FIELD_TITLE) != 0) writeString(out, title);
+        if ((fields & FIELD_DESCRIPTION) != 0) writeString(out, description);
+        if ((fields & FIELD_IMAGE_URI) != 0) writeString(out, imageUri);
+        if ((fields & FIELD_CREATED_AT) != 0) out.writeLong(createdAt);
+        if ((fields & FIELD_COMPLETED) != 0) out.writeBoolean(completed);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static TaskOp decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        int typeIndex = in.readUnsignedByte();
+        if (typeIndex >= Type.values().length) {
+            throw new IOException("Unknown op type " + typeIndex);
+        }
+        String taskId = readString(in);
+        if (taskId == null) {
+            throw new IOException("Op without task id");
+        }
+        TaskOp op = new TaskOp(Type.values()[typeIndex], taskId, in.readUnsignedByte());
+        if ((op.fields & FIELD_TITLE) != 0) op.title = readString(in);
+        if ((op.fields & FIELD_DESCRIPTION) != 0) op.description = readString(in);
+        if ((op.fields & FIELD_IMAGE_URI) != 0) op.imageUri = readString(in);
+        if ((op.fields & FIELD_CREATED_AT) != 0) op.createdAt = in.readLong();
+        if ((op.fields & FIELD_COMPLETED) != 0) op.completed = in.readBoolean();
+        return op;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.notes;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Applies {@link TaskOp}s to ordered header lists and to the full tasks they touch.
+ * Shared by the journal compactor and the in-memory view of {@link JournaledTaskStore}
+ * so both fold the journal the same way. Every op is O(1) on the lists.
+ */
+class TaskOpApplier {
+    interface TaskLoader {
+        Task load(String id);
+    }
+
+    private final OrderedTaskHeaders tasks;
+    private final OrderedTaskHeaders completed;
+    private final Map<String, Task> touched;
+    private final Set<String> deleted = new HashSet<>();
+    private final TaskLoader loader;
+
+    TaskOpApplier(OrderedTaskHeaders tasks, OrderedTaskHeaders completed,
+                  Map<String, Task> touched, TaskLoader loader) {
+        this.tasks = tasks;
+        this.completed = completed;
+        this.touched = touched;
+        this.loader = loader;
+    }
+
+    Set<String> getDeleted() {
+        return deleted;
+    }
+
+    void apply(TaskOp op) {
+        String id = op.getTaskId();
+        switch (op.getType()) {
+            case ADD: {
+                completed.remove(id);
+                Task task = op.toTask();
+                tasks.addFirst(TaskHeader.from(task));
+                touched.put(id, task);
+                deleted.remove(id);
+                break;
+            }
+            case UPDATE: {
+                Task task = load(id);
+                if (task != null) {
+                    op.applyFields(task);
+                    touched.put(id, task);
+                    TaskHeader header = headerAfterUpdate(op, task);
+                    if (!tasks.replace(header)) {
+                        completed.replace(header);
+                    }
+                }
+                break;
+            }
+            case COMPLETE: {
+                Task task = load(id);
+                if (task != null) {
+                    task.setCompleted(true);
+                    touched.put(id, task);
+                }
+                TaskHeader header = tasks.remove(id);
+                if (header == null) header = completed.get(id);
+                if (header != null) {
+                    header.setCompleted(true);
+                    completed.addFirst(header);
+                }
+                break;
+            }
+            case DELETE:
+                touched.remove(id);
+                deleted.add(id);
+                tasks.remove(id);
+                completed.remove(id);
+                break;
+        }
+    }
+
+    private TaskHeader headerAfterUpdate(TaskOp op, Task task) {
+        if (!op.has(TaskOp.FIELD_DESCRIPTION)) {
+            TaskHeader current = tasks.get(task.getId());
+            if (current == null) current = completed.get(task.getId());
+            if (current != null) return current.withTitle(task.getTitle());
+        }
+        return TaskHeader.from(task);
+    }
+
+    private Task load(String id) {
+        Task task = touched.get(id);
+        if (task != null) return task;
+        if (deleted.contains(id)) return null;
+        return loader.load(id);
+    }
+}
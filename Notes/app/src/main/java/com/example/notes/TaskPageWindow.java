@@ -0,0 +1,163 @@
+package com.example.notes;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * One task list as fixed-size pages, of which only those near the viewport are held. Rows of
+ * pages that are not loaded read as null and show as placeholders, so the list has its full
+ * length from the first frame while memory stays at a few pages however many tasks there are.
+ * Loaded pages are never modified, so copies share them.
+ */
+public class TaskPageWindow {
+    private final int size;
+    private final int pageSize;
+    private final Map<Integer, List<TaskHeader>> pages;
+
+    public TaskPageWindow(int size, int pageSize) {
+        this(size, pageSize, new HashMap<>());
+    }
+
+    private TaskPageWindow(int size, int pageSize, Map<Integer, List<TaskHeader>> pages) {
+        this.size = size;
+        this.pageSize = pageSize;
+        this.pages = pages;
+    }
+
+    /** A window with every row loaded, for lists that are already in memory such as search results. */
+    public static TaskPageWindow of(List<TaskHeader> rows, int pageSize) {
+        TaskPageWindow window = new TaskPageWindow(rows.size(), pageSize);
+        for (int page = 0; page < window.pageCount(); page++) {
+            int start = page * pageSize;
+            window.put(page, new ArrayList<>(rows.subList(start, Math.min(rows.size(), start + pageSize))));
+        }
+        return window;
+    }
+
+    public TaskPageWindow copy() {
+        return new TaskPageWindow(size, pageSize, new HashMap<>(pages));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int pageCount() {
+        return (size + pageSize - 1) / pageSize;
+    }
+
+    public int pageStart(int page) {
+        return page * pageSize;
+    }
+
+    /** The number of rows in the page, which only the last one may have fewer of. */
+    public int pageLength(int page) {
+        return Math.max(0, Math.min(pageSize, size - page * pageSize));
+    }
+
+    /** The row at the position, or null while its page is not loaded. */
+    public TaskHeader get(int position) {
+        List<TaskHeader> rows = pages.get(position / pageSize);
+        if (rows == null) return null;
+        int index = position % pageSize;
+        return index < rows.size() ? rows.get(index) : null;
+    }
+
+    public boolean isLoaded(int page) {
+        return pages.containsKey(page);
+    }
+
+    public int loadedPageCount() {
+        return pages.size();
+    }
+
+    /** Holds the rows of a page; rows past the end of the list are dropped. */
+    public void put(int page, List<TaskHeader> rows) {
+        int length = pageLength(page);
+        if (length == 0) return;
+        pages.put(page, rows.size() > length ? new ArrayList<>(rows.subList(0, length)) : rows);
+    }
+
+    public void remove(int page) {
+        pages.remove(page);
+    }
+
+    /** The row just before the page when that is loaded, to page on from with a keyset query. */
+    public TaskHeader lastRowBefore(int page) {
+        List<TaskHeader> rows = pages.get(page - 1);
+        return rows != null && rows.size() == pageSize ? rows.get(pageSize - 1) : null;
+    }
+
+    public Integer positionOf(String taskId) {
+        for (Map.Entry<Integer, List<TaskHeader>> entry : pages.entrySet()) {
+            List<TaskHeader> rows = entry.getValue();
+            for (int i = 0; i < rows.size(); i++) {
+                if (rows.get(i).getId().equals(taskId)) return entry.getKey() * pageSize + i;
+            }
+        }
+        return null;
+    }
+
+    /** Pages covering the visible rows and {@code prefetch} pages either side that are not loaded yet. */
+    public List<Integer> missingPages(int firstVisible, int lastVisible, int prefetch) {
+        List<Integer> missing = new ArrayList<>();
+        if (size == 0) return missing;
+        int first = Math.max(0, pageOf(firstVisible) - prefetch);
+        int last = Math.min(pageCount() - 1, pageOf(lastVisible) + prefetch);
+        for (int page = first; page <= last; page++) {
+            if (!pages.containsKey(page)) missing.add(page);
+        }
+        return missing;
+    }
+
+    /** Loaded pages more than {@code keep} pages away from the visible ones. */
+    public List<Integer> farPages(int firstVisible, int lastVisible, int keep) {
+        int first = pageOf(firstVisible) - keep;
+        int last = pageOf(lastVisible) + keep;
+        List<Integer> far = new ArrayList<>();
+        for (int page : pages.keySet()) {
+            if (page < first || page > last) far.add(page);
+        }
+        return far;
+    }
+
+    /** Loaded pages in order. */
+    public TreeSet<Integer> loadedPages() {
+        return new TreeSet<>(pages.keySet());
+    }
+
+    /** The first position of the first loaded page, or 0 when nothing is loaded. */
+    public int loadedStart() {
+        return pages.isEmpty() ? 0 : pageStart(loadedPages().first());
+    }
+
+    /** The position after the last loaded page, or 0 when nothing is loaded. */
+    public int loadedEnd() {
+        if (pages.isEmpty()) return 0;
+        int last = loadedPages().last();
+        return pageStart(last) + pageLength(last);
+    }
+
+    /** The rows as a list, null where not loaded. */
+    public List<TaskHeader> asList() {
+        return new AbstractList<TaskHeader>() {
+            @Override
+            public TaskHeader get(int index) {
+                return TaskPageWindow.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    private int pageOf(int position) {
+        return Math.max(0, Math.min(position, size - 1)) / pageSize;
+    }
+}
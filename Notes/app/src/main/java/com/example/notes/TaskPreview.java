@@ -0,0 +1,85 @@
+package com.example.notes;
+
+/**
+ * What the task list shows of a description: a short plain-text snippet and the first image.
+ * Derived from the {@link NoteDocument} when a task is written, never while binding rows.
+ * {@link #VERSION} is stored with every derived preview; bump it whenever the derivation
+ * changes so stored previews get recomputed.
+ */
+public final class TaskPreview {
+    public static final int VERSION = 3;
+
+    static final int LENGTH = 100;
+    static final String IMAGE_TEXT = "[Изображение]";
+
+    public final String text;
+    public final String firstImage;
+
+    private TaskPreview(String text, String firstImage) {
+        this.text = text;
+        this.firstImage = firstImage;
+    }
+
+    /** The preview of a stored description, in either stored form. */
+    public static TaskPreview of(String stored) {
+        return from(NoteDocument.decode(stored));
+    }
+
+    public static TaskPreview from(NoteDocument document) {
+        if (document.isEmpty()) return new TaskPreview("", null);
+        return new TaskPreview(strip(document, IMAGE_TEXT, LENGTH), document.firstImageRef());
+    }
+
+    /** The whole visible text, with images dropped; used for search. */
+    static String plainText(String stored) {
+        return plainText(NoteDocument.decode(stored));
+    }
+
+    static String plainText(NoteDocument document) {
+        if (document.isEmpty()) return "";
+        return strip(document, " ", -1);
+    }
+
+    /**
+     * Joins the text runs, replacing images with {@code imageText}. With a {@code limit},
+     * stops adding text as soon as the trimmed text is known to be longer and cuts it there.
+     */
+    private static String strip(NoteDocument document, String imageText, int limit) {
+        StringBuilder out = new StringBuilder(limit > 0 ? limit + 16 : 64);
+        for (int i = 0, size = document.size(); i < size && !isFull(out, limit); i++) {
+            if (document.type(i) != NoteDocument.TEXT) {
+                append(out, imageText);
+                continue;
+            }
+            String text = document.value(i);
+            for (int j = 0, length = text.length(); j < length && !isFull(out, limit); j++) {
+                append(out, text.charAt(j));
+            }
+        }
+
+        int end = out.length();
+        while (end > 0 && Character.isWhitespace(out.charAt(end - 1))) end--;
+        out.setLength(end);
+        if (limit > 0 && out.length() > limit) {
+            out.setLength(limit);
+            out.append("...");
+        }
+        return out.toString();
+    }
+
+    private static boolean isFull(StringBuilder out, int limit) {
+        return limit > 0 && out.length() > limit && !Character.isWhitespace(out.charAt(out.length() - 1));
+    }
+
+    // Leading whitespace is never kept, which trims the start as the text is built.
+    private static void append(StringBuilder out, char c) {
+        if (out.length() == 0 && Character.isWhitespace(c)) return;
+        out.append(c);
+    }
+
+    private static void append(StringBuilder out, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            append(out, text.charAt(i));
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.notes;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.widget.FrameLayout;
+
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Task rows shared by both lists for as long as the activity lives, so switching tabs reuses
+ * the rows of the list being left instead of inflating item_task again. A screenful is
+ * inflated on a background thread when the activity starts, so even the first list is laid
+ * out without inflating on the main thread.
+ */
+public class TaskRowPool {
+    static final int WARM_ROWS = 12;
+    private static final int MAX_ROWS = 24;
+    // Rows kept bound just off screen, on top of the pool, so flinging back skips rebinding.
+    private static final int VIEW_CACHE_SIZE = 4;
+
+    private final RecyclerView.RecycledViewPool pool = new RecyclerView.RecycledViewPool();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private boolean shared = true;
+
+    public TaskRowPool() {
+        pool.setMaxRecycledViews(TaskAdapter.VIEW_TYPE_TASK, MAX_ROWS);
+    }
+
+    /** Inflates {@link #WARM_ROWS} rows off the main thread; they join the pool once ready. */
+    public void preInflate(Context context) {
+        new Thread(() -> {
+            // Only used to create rows; each row is bound to whichever adapter takes it.
+            TaskAdapter factory = new TaskAdapter(new TaskSelection(), null);
+            FrameLayout parent = new FrameLayout(context);
+            List<RecyclerView.ViewHolder> rows = new ArrayList<>(WARM_ROWS);
+            for (int i = 0; i < WARM_ROWS; i++) {
+                rows.add(factory.createViewHolder(parent, TaskAdapter.VIEW_TYPE_TASK));
+            }
+            mainHandler.post(() -> {
+                for (RecyclerView.ViewHolder row : rows) {
+                    pool.putRecycledView(row);
+                }
+            });
+        }, "task-row-inflater").start();
+    }
+
+    /**
+     * Makes the list take its rows from the pool and give them back when its view goes away.
+     * Call it after setting the adapter: setting an adapter on a list that is already in an
+     * unused pool empties the pool.
+     */
+    public void attach(RecyclerView recyclerView) {
+        if (shared) {
+            recyclerView.setRecycledViewPool(pool);
+        }
+        recyclerView.setHasFixedSize(true);
+        recyclerView.setItemViewCacheSize(VIEW_CACHE_SIZE);
+        RecyclerView.LayoutManager layoutManager = recyclerView.getLayoutManager();
+        if (layoutManager instanceof LinearLayoutManager) {
+            ((LinearLayoutManager) layoutManager).setRecycleChildrenOnDetach(true);
+        }
+    }
+
+    // Lets TabSwitchBenchmark measure lists with a pool of their own, as before the pool existed.
+    void setShared(boolean shared) {
+        this.shared = shared;
+    }
+
+    public int size() {
+        return pool.getRecycledViewCount(TaskAdapter.VIEW_TYPE_TASK);
+    }
+
+    public void clear() {
+        pool.clear();
+    }
+}
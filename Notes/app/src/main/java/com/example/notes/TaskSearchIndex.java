@@ -0,0 +1,194 @@
+package com.example.notes;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * In-memory inverted index over task titles and the text of their descriptions (markup and
+ * image tags stripped). Tokens are kept sorted so a query word matches every token it is a
+ * prefix of. The index is saved as the token list of each task; postings are rebuilt on load.
+ */
+public class TaskSearchIndex {
+    private static final int MAGIC = 0x4E545358; // "NTSX"
+    private static final int FORMAT_VERSION = 1;
+    private static final int MAX_TOKEN_LENGTH = 64;
+
+    private final TreeMap<String, Set<String>> postings = new TreeMap<>();
+    private final Map<String, String[]> tokensById = new HashMap<>();
+    private final Set<String> completedIds = new HashSet<>();
+    private boolean dirty;
+
+    public synchronized void put(Task task) {
+        remove(task.getId());
+        String title = task.getTitle() != null ? task.getTitle() : "";
+        String[] tokens = tokenize(title + " " + TaskPreview.plainText(task.getDocument()));
+        tokensById.put(task.getId(), tokens);
+        for (String token : tokens) {
+            Set<String> ids = postings.get(token);
+            if (ids == null) {
+                ids = new HashSet<>();
+                postings.put(token, ids);
+            }
+            ids.add(task.getId());
+        }
+        if (task.isCompleted()) {
+            completedIds.add(task.getId());
+        }
+        dirty = true;
+    }
+
+    public synchronized void setCompleted(String id) {
+        if (tokensById.containsKey(id) && completedIds.add(id)) {
+            dirty = true;
+        }
+    }
+
+    public synchronized void remove(String id) {
+        String[] tokens = tokensById.remove(id);
+        completedIds.remove(id);
+        if (tokens == null) return;
+        for (String token : tokens) {
+            Set<String> ids = postings.get(token);
+            if (ids != null) {
+                ids.remove(id);
+                if (ids.isEmpty()) postings.remove(token);
+            }
+        }
+        dirty = true;
+    }
+
+    public synchronized void clear() {
+        postings.clear();
+        tokensById.clear();
+        completedIds.clear();
+        dirty = true;
+    }
+
+    public synchronized int size() {
+        return tokensById.size();
+    }
+
+    /** Ids of tasks in the given list that contain a prefix match for every word of the query. */
+    public synchronized Set<String> search(boolean completed, String query) {
+        Set<String> result = null;
+        for (String word : tokenize(query)) {
+            Set<String> matches = new HashSet<>();
+            SortedMap<String, Set<String>> range = postings.subMap(word, word + Character.MAX_VALUE);
+            for (Set<String> ids : range.values()) {
+                matches.addAll(ids);
+            }
+            if (result == null) {
+                result = matches;
+            } else {
+                result.retainAll(matches);
+            }
+            if (result.isEmpty()) break;
+        }
+        if (result == null) return new HashSet<>();
+        if (completed) {
+            result.retainAll(completedIds);
+        } else {
+            result.removeAll(completedIds);
+        }
+        return result;
+    }
+
+    static String[] tokenize(String text) {
+        if (text == null) return new String[0];
+        Set<String> tokens = new LinkedHashSet<>();
+        String lower = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lower.length(); i++) {
+            boolean wordChar = i < lower.length() && Character.isLetterOrDigit(lower.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(lower.substring(start, Math.min(i, start + MAX_TOKEN_LENGTH)));
+                start = -1;
+            }
+        }
+        return tokens.toArray(new String[0]);
+    }
+
+    public synchronized boolean isDirty() {
+        return dirty;
+    }
+
+    public synchronized void save(File file) throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT_VERSION);
+            out.writeInt(tokensById.size());
+            for (Map.Entry<String, String[]> entry : tokensById.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeBoolean(completedIds.contains(entry.getKey()));
+                out.writeInt(entry.getValue().length);
+                for (String token : entry.getValue()) {
+                    out.writeUTF(token);
+                }
+            }
+        }
+        if (!tmp.renameTo(file)) {
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Could not replace " + file);
+            }
+        }
+        dirty = false;
+    }
+
+    public static TaskSearchIndex load(File file) throws IOException {
+        TaskSearchIndex index = new TaskSearchIndex();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT_VERSION) {
+                throw new IOException("Not a search index: " + file);
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String id = in.readUTF();
+                boolean completed = in.readBoolean();
+                String[] tokens = new String[in.readInt()];
+                for (int t = 0; t < tokens.length; t++) {
+                    tokens[t] = in.readUTF();
+                    Set<String> ids = index.postings.get(tokens[t]);
+                    if (ids == null) {
+                        ids = new HashSet<>();
+                        index.postings.put(tokens[t], ids);
+                    }
+                    ids.add(id);
+                }
+                index.tokensById.put(id, tokens);
+                if (completed) {
+                    index.completedIds.add(id);
+                }
+            }
+        }
+        return index;
+    }
+
+    /** Replaces the contents with the given tasks, e.g. when no saved index could be used. */
+    public synchronized void rebuild(Collection<Task> tasks) {
+        clear();
+        for (Task task : tasks) {
+            put(task);
+        }
+    }
+}
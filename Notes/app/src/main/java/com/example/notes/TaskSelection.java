@@ -0,0 +1,108 @@
+package com.example.notes;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Which tasks of one list are selected, by id so it stays right while rows move, appear or
+ * disappear, or drop out of the loaded window. Held as a base state (nothing or everything
+ * selected) plus the ids toggled against it, so select-all and clear are O(1) however long the
+ * list is, a lookup is one hash probe, and a range costs one probe per row in it. The same two
+ * parts are what a fragment saves in its instance state.
+ */
+public class TaskSelection {
+    private boolean all;
+    private final Set<String> toggled = new LinkedHashSet<>();
+
+    TaskSelection() {
+    }
+
+    /** A selection saved as {@link #isAll()} and {@link #toggledIds()}. */
+    public static TaskSelection restore(boolean all, Collection<String> toggled) {
+        TaskSelection selection = new TaskSelection();
+        selection.all = all;
+        if (toggled != null) {
+            selection.toggled.addAll(toggled);
+        }
+        return selection;
+    }
+
+    public boolean isSelected(String taskId) {
+        return all != toggled.contains(taskId);
+    }
+
+    public void setSelected(String taskId, boolean selected) {
+        if (selected == all) {
+            toggled.remove(taskId);
+        } else {
+            toggled.add(taskId);
+        }
+    }
+
+    public void toggle(String taskId) {
+        setSelected(taskId, !isSelected(taskId));
+    }
+
+    /**
+     * Selects the rows from {@code from} to {@code to}, both included and in either order.
+     * Null rows are placeholders for rows not loaded and are skipped.
+     */
+    public void selectRange(List<TaskHeader> rows, int from, int to) {
+        int start = Math.max(0, Math.min(from, to));
+        int end = Math.min(rows.size() - 1, Math.max(from, to));
+        for (int i = start; i <= end; i++) {
+            TaskHeader row = rows.get(i);
+            if (row != null) {
+                setSelected(row.getId(), true);
+            }
+        }
+    }
+
+    /** Selects every task of the list, including pages that are not loaded yet. */
+    public void selectAll() {
+        all = true;
+        toggled.clear();
+    }
+
+    public void clear() {
+        all = false;
+        toggled.clear();
+    }
+
+    public boolean isAll() {
+        return all;
+    }
+
+    public boolean isEmpty() {
+        return !all && toggled.isEmpty();
+    }
+
+    /** An independent copy, e.g. to resolve in the background while this one keeps changing. */
+    public TaskSelection copy() {
+        return restore(all, toggled);
+    }
+
+    /** The ids toggled against the base state, in the order they were. */
+    public ArrayList<String> toggledIds() {
+        return new ArrayList<>(toggled);
+    }
+
+    /** The ids selected one by one, in the order they were; only the whole selection when not {@link #isAll()}. */
+    public List<String> explicitIds() {
+        return all ? new ArrayList<>() : new ArrayList<>(toggled);
+    }
+
+    /** The selected ids among {@code rows}, in list order. */
+    public List<String> resolve(List<TaskHeader> rows) {
+        List<String> ids = new ArrayList<>(all ? rows.size() - Math.min(rows.size(), toggled.size()) : toggled.size());
+        for (TaskHeader row : rows) {
+            if (isSelected(row.getId())) {
+                ids.add(row.getId());
+            }
+        }
+        return ids;
+    }
+}
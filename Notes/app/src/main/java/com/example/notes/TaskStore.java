@@ -0,0 +1,34 @@
+package com.example.notes;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Persistent storage behind {@link DataManager}. Lists are ordered newest first and read in
+ * keyset pages: {@code after} is the last header of the previous page, or null for the first.
+ */
+public interface TaskStore {
+    int count(boolean completed);
+
+    List<TaskHeader> loadPage(boolean completed, TaskHeader after, int limit);
+
+    /** Up to {@code limit} headers starting at list position {@code offset}, for jumps into the list. */
+    List<TaskHeader> loadRange(boolean completed, int offset, int limit);
+
+    /** Headers of the given tasks that are in the list, in list order. */
+    List<TaskHeader> loadHeaders(boolean completed, Collection<String> ids);
+
+    Task getTask(String id);
+
+    /** The image refs of each of the given tasks, read without caching the tasks. */
+    List<String> loadImageRefs(Collection<String> ids);
+
+    /** The image refs of every stored task, once per task that uses the image. */
+    List<String> loadAllImageRefs();
+
+    List<Task> loadAll(boolean completed);
+
+    /** Persists a batch of ops; called from the write-behind thread. */
+    void apply(List<TaskOp> batch) throws IOException;
+}
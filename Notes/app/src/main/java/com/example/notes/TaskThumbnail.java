@@ -0,0 +1,37 @@
+package com.example.notes;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Glide model for the list thumbnail of a task: the blob that holds its first image.
+ * Blobs are content addressed and never change, so the hash alone identifies the
+ * decoded thumbnail in Glide's memory and disk caches, and tasks sharing an image share it.
+ */
+public final class TaskThumbnail {
+    private final String taskId;
+    private final String hash;
+
+    public TaskThumbnail(String taskId, String hash) {
+        this.taskId = taskId;
+        this.hash = hash;
+    }
+
+    public String getTaskId() { return taskId; }
+    public String getHash() { return hash; }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TaskThumbnail && hash.equals(((TaskThumbnail) other).hash);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash.hashCode();
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "thumbnail:" + hash;
+    }
+}
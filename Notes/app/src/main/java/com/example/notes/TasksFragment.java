@@ -21,16 +21,21 @@ import com.google.android.material.floatingactionbutton.FloatingActionButton;
 import java.util.ArrayList;
 import java.util.List;
 
-public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickListener {
+public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickListener,
+        DataManager.ChangeListener {
 
     private static final int PICK_IMAGE_REQUEST = 1;
+    private static final String KEY_SELECTION_MODE = "selection_mode";
+    private static final String KEY_SELECT_ALL = "select_all";
+    private static final String KEY_TOGGLED_IDS = "toggled_ids";
 
     private RecyclerView recyclerView;
     private TaskAdapter adapter;
-    private FloatingActionButton fabAddTask, fabComplete, fabDelete;
+    private FloatingActionButton fabAddTask, fabComplete, fabDelete, fabSelectAll;
     private android.widget.LinearLayout selectionToolbar;
     private DataManager dataManager;
-    private int editingPosition = -1;
+    private TaskListLoader listLoader;
+    private String editingTaskId;
     private AlertDialog currentDialog;
 
     @Override
@@ -44,32 +49,54 @@ public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickLi
         fabAddTask = view.findViewById(R.id.fab_add_task);
         fabComplete = view.findViewById(R.id.fab_complete);
         fabDelete = view.findViewById(R.id.fab_delete);
+        fabSelectAll = view.findViewById(R.id.fab_select_all);
         selectionToolbar = view.findViewById(R.id.selection_toolbar);
 
         recyclerView.setLayoutManager(new LinearLayoutManager(getContext()));
 
-        adapter = new TaskAdapter(dataManager.getTasks(), this);
+        // A recreated fragment, also after process death, keeps the selection; a new one starts without.
+        TaskSelection selection = savedInstanceState == null ? new TaskSelection()
+                : TaskSelection.restore(savedInstanceState.getBoolean(KEY_SELECT_ALL),
+                        savedInstanceState.getStringArrayList(KEY_TOGGLED_IDS));
+        adapter = new TaskAdapter(selection, this);
         recyclerView.setAdapter(adapter);
+        ((MainActivity) requireActivity()).getTaskRowPool().attach(recyclerView);
+        listLoader = new TaskListLoader(dataManager, false, adapter);
+        listLoader.attach(recyclerView);
+        listLoader.attachSearch(view.findViewById(R.id.search_edit_text));
+        listLoader.reload();
+        dataManager.addChangeListener(this);
 
         fabAddTask.setOnClickListener(v -> showAddTaskDialog());
         fabComplete.setOnClickListener(v -> completeSelectedTasks());
         fabDelete.setOnClickListener(v -> deleteSelectedTasks());
+        fabSelectAll.setOnClickListener(v -> adapter.selectAll());
+
+        if (savedInstanceState != null && savedInstanceState.getBoolean(KEY_SELECTION_MODE)) {
+            adapter.setSelectionMode(true);
+            updateSelectionUI();
+        }
 
         return view;
     }
 
     private void showAddTaskDialog() {
         if (!adapter.isSelectionMode()) {
-            editingPosition = -1;
+            editingTaskId = null;
             showTaskDialog(null);
         }
     }
 
-    private void showEditTaskDialog(int position) {
+    private void showEditTaskDialog(String taskId) {
         if (!adapter.isSelectionMode()) {
-            editingPosition = position;
-            Task task = dataManager.getTasks().get(position);
-            showTaskDialog(task);
+            editingTaskId = taskId;
+            dataManager.loadTask(taskId, task -> {
+                // The screen may be gone, or another task opened, by the time the task is read.
+                if (task != null && isAdded() && taskId.equals(editingTaskId) && !adapter.isSelectionMode()
+                        && (currentDialog == null || !currentDialog.isShowing())) {
+                    showTaskDialog(task);
+                }
+            });
         }
     }
 
@@ -85,11 +112,7 @@ public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickLi
         if (existingTask != null) {
             titleEditText.setText(existingTask.getTitle());
 
-            if (existingTask.getDescription() != null && existingTask.getDescription().contains("<img")) {
-                descriptionEditText.setHtmlContent(existingTask.getDescription());
-            } else {
-                descriptionEditText.setText(existingTask.getDescription());
-            }
+            descriptionEditText.setDocument(existingTask.getDocument());
         }
 
         btnAddImageInline.setOnClickListener(v -> {
@@ -103,24 +126,21 @@ public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickLi
                 .setTitle(existingTask == null ? "Добавить задачу" : "Редактировать задачу")
                 .setPositiveButton("Сохранить", (dialog, which) -> {
                     String title = titleEditText.getText().toString().trim();
-                    String description = descriptionEditText.getHtmlContent(); ////////2222212122121
+                    NoteDocument description = descriptionEditText.getDocument();
 
                     if (title.isEmpty() && description.isEmpty()) {
                         title = existingTask == null ? "Новая задача" : "Задача без названия";
                     }
 
                     if (existingTask == null) {
-                        Task newTask = new Task(title, description);
+                        Task newTask = new Task();
+                        newTask.setTitle(title);
+                        newTask.setDocument(description);
                         dataManager.addTask(newTask);
-                        adapter.updateTasks(dataManager.getTasks());
                         recyclerView.scrollToPosition(0);
                         Toast.makeText(getContext(), "Задача добавлена", Toast.LENGTH_SHORT).show();
                     } else {
-                        Task updatedTask = dataManager.getTasks().get(editingPosition);
-                        updatedTask.setTitle(title);
-                        updatedTask.setDescription(description);
-                        dataManager.updateTask(editingPosition, updatedTask);
-                        adapter.updateTasks(dataManager.getTasks());
+                        dataManager.updateTask(editingTaskId, title, description);
                         Toast.makeText(getContext(), "Задача обновлена", Toast.LENGTH_SHORT).show();
                     }
                 })
@@ -152,10 +172,11 @@ public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickLi
 
                     if (data.getClipData() != null) {
                         int count = data.getClipData().getItemCount();
+                        List<Uri> imageUris = new ArrayList<>();
                         for (int i = 0; i < count; i++) {
-                            Uri imageUri = data.getClipData().getItemAt(i).getUri();
-                            editText.insertImage(imageUri);
+                            imageUris.add(data.getClipData().getItemAt(i).getUri());
                         }
+                        editText.insertImages(imageUris);
                         Toast.makeText(getContext(), "Вставлено " + count + " изображений", Toast.LENGTH_SHORT).show();
                     } else if (data.getData() != null) {
                         Uri imageUri = data.getData();
@@ -168,19 +189,45 @@ public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickLi
     }
 
     @Override
-    public void onTaskClick(int position) {
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        if (adapter != null) {
+            outState.putBoolean(KEY_SELECTION_MODE, adapter.isSelectionMode());
+            outState.putBoolean(KEY_SELECT_ALL, adapter.getSelection().isAll());
+            outState.putStringArrayList(KEY_TOGGLED_IDS, adapter.getSelection().toggledIds());
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        dataManager.removeChangeListener(this);
+    }
+
+    // Also how the list picks up this screen's own edits, once they are written.
+    @Override
+    public void onTasksChanged() {
+        listLoader.reload();
+    }
+
+    @Override
+    public void onTaskClick(String taskId) {
         if (adapter.isSelectionMode()) {
-            adapter.toggleSelection(position);
+            adapter.toggleSelection(taskId);
             updateSelectionUI();
         } else {
-            showEditTaskDialog(position);
+            showEditTaskDialog(taskId);
         }
     }
 
     @Override
-    public void onTaskLongClick(int position) {
-        adapter.setSelectionMode(true);
-        adapter.toggleSelection(position);
+    public void onTaskLongClick(String taskId) {
+        if (adapter.isSelectionMode()) {
+            adapter.selectRange(taskId);
+        } else {
+            adapter.setSelectionMode(true);
+            adapter.toggleSelection(taskId);
+        }
         updateSelectionUI();
     }
 
@@ -195,32 +242,34 @@ public class TasksFragment extends Fragment implements TaskAdapter.OnTaskClickLi
     }
 
     private void completeSelectedTasks() {
-        List<Integer> selectedPositions = adapter.getSelectedPositions();
-        if (selectedPositions.isEmpty()) {
-            Toast.makeText(getContext(), "Выберите задачи", Toast.LENGTH_SHORT).show();
-            return;
-        }
+        listLoader.resolveSelection(adapter.getSelection(), selectedIds -> {
+            if (getView() == null) return;
+            if (selectedIds.isEmpty()) {
+                Toast.makeText(getContext(), "Выберите задачи", Toast.LENGTH_SHORT).show();
+                return;
+            }
 
-        dataManager.completeTasks(selectedPositions);
-        adapter.updateTasks(dataManager.getTasks());
-        adapter.setSelectionMode(false);
-        updateSelectionUI();
+            dataManager.completeTasks(selectedIds);
+            adapter.setSelectionMode(false);
+            updateSelectionUI();
 
-        Toast.makeText(getContext(), "Задачи перенесены в выполненные", Toast.LENGTH_SHORT).show();
+            Toast.makeText(getContext(), "Задачи перенесены в выполненные", Toast.LENGTH_SHORT).show();
+        });
     }
 
     private void deleteSelectedTasks() {
-        List<Integer> selectedPositions = adapter.getSelectedPositions();
-        if (selectedPositions.isEmpty()) {
-            Toast.makeText(getContext(), "Выберите задачи", Toast.LENGTH_SHORT).show();
-            return;
-        }
+        listLoader.resolveSelection(adapter.getSelection(), selectedIds -> {
+            if (getView() == null) return;
+            if (selectedIds.isEmpty()) {
+                Toast.makeText(getContext(), "Выберите задачи", Toast.LENGTH_SHORT).show();
+                return;
+            }
 
-        dataManager.deleteTasks(selectedPositions);
-        adapter.updateTasks(dataManager.getTasks());
-        adapter.setSelectionMode(false);
-        updateSelectionUI();
+            dataManager.deleteTasks(selectedIds);
+            adapter.setSelectionMode(false);
+            updateSelectionUI();
 
-        Toast.makeText(getContext(), "Задачи удалены", Toast.LENGTH_SHORT).show();
+            Toast.makeText(getContext(), "Задачи удалены", Toast.LENGTH_SHORT).show();
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,120 @@
+package com.example.notes;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Makes the thumbnails of tasks saved before {@link ThumbnailStore} existed. Walks the active
+ * list and then the completed one a page at a time, and records where it stopped after every
+ * page, so a killed process picks up from there instead of starting over. Once both lists are
+ * done the checkpoint says so and later runs return at once. A thumbnail the walk misses (say,
+ * the checkpointed task was deleted meanwhile) is still made the first time the list shows it.
+ */
+public class ThumbnailBackfillJob implements Runnable {
+    static final int PAGE_SIZE = 100;
+    // Bump to walk all tasks again, e.g. after changing the thumbnail size or format.
+    static final int VERSION = 2;
+
+    /** Where the walk stopped: the list and the last header done in it. */
+    static final class Checkpoint {
+        final boolean completed;
+        final String lastId;
+        final long lastSortKey;
+        final boolean done;
+
+        Checkpoint(boolean completed, String lastId, long lastSortKey, boolean done) {
+            this.completed = completed;
+            this.lastId = lastId;
+            this.lastSortKey = lastSortKey;
+            this.done = done;
+        }
+
+        static Checkpoint start() {
+            return new Checkpoint(false, null, 0, false);
+        }
+
+        /** A header to page after; stores only look at its id or sort key. */
+        TaskHeader cursor() {
+            if (lastId == null) return null;
+            TaskHeader header = new TaskHeader(lastId, null, completed, 0, null, null);
+            header.setSortKey(lastSortKey);
+            return header;
+        }
+
+        static Checkpoint load(File file) {
+            if (!file.exists()) return start();
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() != VERSION) return start();
+                boolean done = in.readBoolean();
+                boolean completed = in.readBoolean();
+                String lastId = in.readBoolean() ? in.readUTF() : null;
+                long lastSortKey = in.readLong();
+                return new Checkpoint(completed, lastId, lastSortKey, done);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return start();
+            }
+        }
+
+        void save(File file) throws IOException {
+            File tmp = new File(file.getPath() + ".tmp");
+            try (FileOutputStream fileOut = new FileOutputStream(tmp);
+                 DataOutputStream out = new DataOutputStream(fileOut)) {
+                out.writeInt(VERSION);
+                out.writeBoolean(done);
+                out.writeBoolean(completed);
+                out.writeBoolean(lastId != null);
+                if (lastId != null) out.writeUTF(lastId);
+                out.writeLong(lastSortKey);
+                out.flush();
+                fileOut.getFD().sync();
+            }
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Cannot replace " + file);
+            }
+        }
+    }
+
+    private final DataManager dataManager;
+    private final ThumbnailStore thumbnailStore;
+    private final File stateFile;
+
+    public ThumbnailBackfillJob(DataManager dataManager, ThumbnailStore thumbnailStore, File stateFile) {
+        this.dataManager = dataManager;
+        this.thumbnailStore = thumbnailStore;
+        this.stateFile = stateFile;
+    }
+
+    @Override
+    public void run() {
+        Checkpoint checkpoint = Checkpoint.load(stateFile);
+        if (checkpoint.done) return;
+        try {
+            while (true) {
+                List<TaskHeader> page = dataManager.loadPage(checkpoint.completed, checkpoint.cursor(), PAGE_SIZE);
+                for (TaskHeader header : page) {
+                    if (header.getFirstImage() != null) {
+                        thumbnailStore.generate(header.getFirstImage());
+                    }
+                }
+                if (page.size() == PAGE_SIZE) {
+                    TaskHeader last = page.get(page.size() - 1);
+                    checkpoint = new Checkpoint(checkpoint.completed, last.getId(), last.getSortKey(), false);
+                } else if (!checkpoint.completed) {
+                    checkpoint = new Checkpoint(true, null, 0, false);
+                } else {
+                    new Checkpoint(true, null, 0, true).save(stateFile);
+                    return;
+                }
+                checkpoint.save(stateFile);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
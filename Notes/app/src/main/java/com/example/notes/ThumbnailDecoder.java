@@ -0,0 +1,76 @@
+package com.example.notes;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.ResourceDecoder;
+import com.bumptech.glide.load.engine.Resource;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapResource;
+
+/**
+ * Decodes a blob straight to thumbnail size: reads the bounds first, then decodes with the
+ * largest power-of-two {@code inSampleSize} that still covers the target, into a bitmap
+ * taken from Glide's pool where possible. Runs on Glide's decode threads.
+ */
+public class ThumbnailDecoder implements ResourceDecoder<ThumbnailModelLoader.BlobFile, Bitmap> {
+    private final BitmapPool bitmapPool;
+
+    public ThumbnailDecoder(BitmapPool bitmapPool) {
+        this.bitmapPool = bitmapPool;
+    }
+
+    @Override
+    public boolean handles(@NonNull ThumbnailModelLoader.BlobFile source, @NonNull Options options) {
+        return true;
+    }
+
+    @Override
+    public Resource<Bitmap> decode(@NonNull ThumbnailModelLoader.BlobFile source, int width, int height,
+                                   @NonNull Options options) {
+        String path = source.file.getPath();
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = sampleSize(bounds.outWidth, bounds.outHeight, width, height);
+        BitmapFactory.Options decode = new BitmapFactory.Options();
+        decode.inSampleSize = sampleSize;
+        decode.inMutable = true;
+        decode.inBitmap = bitmapPool.getDirty(
+                divideRoundingUp(bounds.outWidth, sampleSize),
+                divideRoundingUp(bounds.outHeight, sampleSize),
+                Bitmap.Config.ARGB_8888);
+
+        Bitmap bitmap;
+        try {
+            bitmap = BitmapFactory.decodeFile(path, decode);
+        } catch (IllegalArgumentException e) {
+            // The pooled bitmap could not be reused for this image.
+            bitmapPool.put(decode.inBitmap);
+            decode.inBitmap = null;
+            bitmap = BitmapFactory.decodeFile(path, decode);
+        }
+        return BitmapResource.obtain(bitmap, bitmapPool);
+    }
+
+    static int sampleSize(int sourceWidth, int sourceHeight, int targetWidth, int targetHeight) {
+        if (targetWidth <= 0 || targetHeight <= 0) return 1;
+        int sampleSize = 1;
+        while (sourceWidth / (sampleSize * 2) >= targetWidth
+                && sourceHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private static int divideRoundingUp(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
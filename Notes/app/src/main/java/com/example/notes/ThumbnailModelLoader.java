@@ -0,0 +1,120 @@
+package com.example.notes;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+
+/**
+ * Resolves a {@link TaskThumbnail} to its persisted thumbnail, or to the original blob while the
+ * thumbnail is still missing (and queues it); decoding is left to {@link ThumbnailDecoder}.
+ */
+public class ThumbnailModelLoader implements ModelLoader<TaskThumbnail, ThumbnailModelLoader.BlobFile> {
+
+    /** The blob behind a thumbnail, as its own data type so only {@link ThumbnailDecoder} handles it. */
+    public static final class BlobFile {
+        public final File file;
+
+        BlobFile(File file) {
+            this.file = file;
+        }
+    }
+
+    private final ImageBlobStore blobStore;
+    private final ThumbnailStore thumbnailStore;
+
+    ThumbnailModelLoader(ImageBlobStore blobStore, ThumbnailStore thumbnailStore) {
+        this.blobStore = blobStore;
+        this.thumbnailStore = thumbnailStore;
+    }
+
+    @Override
+    public LoadData<BlobFile> buildLoadData(@NonNull TaskThumbnail model, int width, int height,
+                                            @NonNull Options options) {
+        // Keyed with the thumbnail size too, so Glide's disk cache drops results made at an older size.
+        ObjectKey key = new ObjectKey(model.getHash() + "_" + thumbnailStore.getSize());
+        return new LoadData<>(key, new Fetcher(model.getHash(), blobStore, thumbnailStore));
+    }
+
+    @Override
+    public boolean handles(@NonNull TaskThumbnail model) {
+        return true;
+    }
+
+    private static class Fetcher implements DataFetcher<BlobFile> {
+        private final String hash;
+        private final ImageBlobStore blobStore;
+        private final ThumbnailStore thumbnailStore;
+
+        Fetcher(String hash, ImageBlobStore blobStore, ThumbnailStore thumbnailStore) {
+            this.hash = hash;
+            this.blobStore = blobStore;
+            this.thumbnailStore = thumbnailStore;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super BlobFile> callback) {
+            File thumbnail = thumbnailStore.file(hash);
+            if (thumbnail.exists()) {
+                callback.onDataReady(new BlobFile(thumbnail));
+                return;
+            }
+            File file = blobStore.file(hash);
+            if (file.exists()) {
+                thumbnailStore.ensure(hash);
+                callback.onDataReady(new BlobFile(file));
+            } else {
+                callback.onLoadFailed(new FileNotFoundException(file.getPath()));
+            }
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @NonNull
+        @Override
+        public Class<BlobFile> getDataClass() {
+            return BlobFile.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+
+    public static class Factory implements ModelLoaderFactory<TaskThumbnail, BlobFile> {
+        private final Context context;
+
+        public Factory(Context context) {
+            this.context = context.getApplicationContext();
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<TaskThumbnail, BlobFile> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new ThumbnailModelLoader(ImageBlobStore.getInstance(context), ThumbnailStore.getInstance(context));
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.notes;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Small WebP copies of note images (thumbnails/&lt;hash&gt;_&lt;size&gt;.webp), so the task list
+ * never decodes an original. Keyed by the blob hash like the blobs themselves, and sized to the
+ * list row's image on this device. Made when a note is saved, on demand when the list finds one
+ * missing, and by {@link ThumbnailBackfillJob}.
+ */
+public class ThumbnailStore {
+    private static final String DIR_NAME = "thumbnails";
+    private static final int QUALITY = 80;
+    // Temp files younger than this may belong to a thumbnail being written right now.
+    private static final long TMP_GRACE_MS = 60 * 60 * 1000L;
+
+    private static ThumbnailStore instance;
+
+    private final File dir;
+    private final ImageBlobStore blobStore;
+    private final int size;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Set<String> queued = new HashSet<>();
+
+    private ThumbnailStore(File dir, ImageBlobStore blobStore, int size) {
+        this.dir = dir;
+        this.blobStore = blobStore;
+        this.size = size;
+        dir.mkdirs();
+    }
+
+    public static synchronized ThumbnailStore getInstance(Context context) {
+        if (instance == null) {
+            Context app = context.getApplicationContext();
+            instance = new ThumbnailStore(new File(app.getFilesDir(), DIR_NAME), ImageBlobStore.getInstance(app),
+                    app.getResources().getDimensionPixelSize(R.dimen.task_image_size));
+        }
+        return instance;
+    }
+
+    /** Shorter side of a thumbnail in pixels. */
+    public int getSize() {
+        return size;
+    }
+
+    // The size is part of the name, so thumbnails made for another size are made again.
+    public File file(String hash) {
+        return new File(dir, hash + "_" + size + ".webp");
+    }
+
+    public boolean has(String hash) {
+        return file(hash).exists();
+    }
+
+    /** Makes the thumbnail in the background unless it exists or is already queued. */
+    public void ensure(String hash) {
+        if (hash == null || has(hash)) return;
+        synchronized (queued) {
+            if (!queued.add(hash)) return;
+        }
+        executor.execute(() -> {
+            try {
+                generate(hash);
+            } finally {
+                synchronized (queued) {
+                    queued.remove(hash);
+                }
+            }
+        });
+    }
+
+    /** Makes the thumbnail on the calling thread. Returns false when the blob is gone or unreadable. */
+    public boolean generate(String hash) {
+        File target = file(hash);
+        if (target.exists()) return true;
+        File source = blobStore.file(hash);
+        if (!source.exists()) return false;
+
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(source.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return false;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = ThumbnailDecoder.sampleSize(bounds.outWidth, bounds.outHeight, size, size);
+        Bitmap sampled = BitmapFactory.decodeFile(source.getPath(), options);
+        if (sampled == null) return false;
+
+        Bitmap thumbnail = sampled;
+        int shorter = Math.min(sampled.getWidth(), sampled.getHeight());
+        if (shorter > size) {
+            float scale = (float) size / shorter;
+            thumbnail = Bitmap.createScaledBitmap(sampled,
+                    Math.max(1, Math.round(sampled.getWidth() * scale)),
+                    Math.max(1, Math.round(sampled.getHeight() * scale)), true);
+            sampled.recycle();
+        }
+
+        // The backfill job and ensure() may make the same thumbnail at once; each writes its own file.
+        File tmp = null;
+        try {
+            tmp = File.createTempFile(hash, ".tmp", dir);
+            try (FileOutputStream out = new FileOutputStream(tmp)) {
+                thumbnail.compress(webpFormat(), QUALITY, out);
+                out.getFD().sync();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            if (tmp != null) tmp.delete();
+            return false;
+        } finally {
+            thumbnail.recycle();
+        }
+        if (!tmp.renameTo(target)) {
+            tmp.delete();
+            return target.exists();
+        }
+        return true;
+    }
+
+    /** Deletes thumbnails whose image is no longer stored, those of other sizes and stale temp files. */
+    public void sweepOrphans() {
+        File[] files = dir.listFiles();
+        if (files == null) return;
+        long now = System.currentTimeMillis();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".tmp")) {
+                if (now - file.lastModified() > TMP_GRACE_MS) file.delete();
+                continue;
+            }
+            int end = name.indexOf('_');
+            String hash = end > 0 ? name.substring(0, end) : name;
+            if (!name.equals(file(hash).getName()) || !blobStore.file(hash).exists()) {
+                file.delete();
+            }
+        }
+    }
+
+    File getDir() {
+        return dir;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            return Bitmap.CompressFormat.WEBP_LOSSY;
+        }
+        return Bitmap.CompressFormat.WEBP;
+    }
+}
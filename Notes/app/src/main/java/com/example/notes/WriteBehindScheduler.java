@@ -0,0 +1,243 @@
+package com.example.notes;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffers {@link TaskOp}s for a short window, merges the ones that supersede each other
+ * and hands the result to the sink in one batch on a background thread. A batch the sink
+ * fails to write is kept, ahead of anything submitted since, and tried again after a delay
+ * that doubles with each failure in a row.
+ */
+public class WriteBehindScheduler {
+    public static final long DEFAULT_WINDOW_MS = 300;
+    static final long MAX_RETRY_DELAY_MS = 30_000;
+
+    public interface Sink {
+        void write(List<TaskOp> batch) throws IOException;
+    }
+
+    public static class Stats {
+        public final long submittedOps;
+        public final long writtenOps;
+        public final long batches;
+
+        Stats(long submittedOps, long writtenOps, long batches) {
+            this.submittedOps = submittedOps;
+            this.writtenOps = writtenOps;
+            this.batches = batches;
+        }
+
+        public long coalescedOps() {
+            return submittedOps - writtenOps;
+        }
+
+        @Override
+        public String toString() {
+            return "submitted=" + submittedOps + " written=" + writtenOps
+                    + " coalesced=" + coalescedOps() + " batches=" + batches;
+        }
+    }
+
+    private final Sink sink;
+    private final long windowMs;
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+
+    // Ops in submission order; merged-away ops are left as nulls until the batch is taken.
+    private final List<TaskOp> pending = new ArrayList<>();
+    // Positions in pending of each task's ops, so merging and isPending do not scan the buffer.
+    private final Map<String, List<Integer>> positions = new HashMap<>();
+    private final List<Runnable> pendingCallbacks = new ArrayList<>();
+    private final Set<String> inFlightIds = new HashSet<>();
+    private boolean scheduled;
+    private int failures;
+    private volatile Runnable afterBatch;
+
+    private final AtomicLong submittedOps = new AtomicLong();
+    private final AtomicLong writtenOps = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public WriteBehindScheduler(Sink sink) {
+        this(sink, DEFAULT_WINDOW_MS);
+    }
+
+    public WriteBehindScheduler(Sink sink, long windowMs) {
+        this.sink = sink;
+        this.windowMs = windowMs;
+    }
+
+    /**
+     * Queues the ops. {@code afterPersist} runs on the background thread once they have been
+     * written, e.g. to drop image blobs only after a delete is durable.
+     */
+    public synchronized void submit(List<TaskOp> ops, Runnable afterPersist) {
+        for (TaskOp op : ops) {
+            submittedOps.incrementAndGet();
+            merge(op);
+        }
+        if (afterPersist != null) {
+            pendingCallbacks.add(afterPersist);
+        }
+        if (!scheduled) {
+            scheduled = true;
+            executor.schedule(this::drain, windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Runs on the background thread once per batch, after the batch's callbacks, e.g. to save
+     * state those callbacks changed once instead of once per callback.
+     */
+    public void setAfterBatch(Runnable afterBatch) {
+        this.afterBatch = afterBatch;
+    }
+
+    /** True while an op for the task is buffered or being written. */
+    public synchronized boolean isPending(String taskId) {
+        return inFlightIds.contains(taskId) || positions.containsKey(taskId);
+    }
+
+    /** True while anything is buffered or being written. */
+    public synchronized boolean hasPending() {
+        return !positions.isEmpty() || !inFlightIds.isEmpty();
+    }
+
+    /** Writes everything buffered so far and waits for it, e.g. from onStop. */
+    public void flush() {
+        try {
+            executor.submit(this::drain).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public Stats getStats() {
+        return new Stats(submittedOps.get(), writtenOps.get(), batches.get());
+    }
+
+    /** The wait before writing again after {@code failures} failed batches in a row. */
+    static long retryDelay(long windowMs, int failures) {
+        long delay = Math.max(1, windowMs) << Math.min(failures, 20);
+        return Math.min(delay, MAX_RETRY_DELAY_MS);
+    }
+
+    // Only looks at the ops of the same task, so a batch of n ops merges in O(n).
+    private void merge(TaskOp op) {
+        List<Integer> earlier = positions.get(op.getTaskId());
+        switch (op.getType()) {
+            case UPDATE:
+                if (earlier != null) {
+                    for (int i = earlier.size() - 1; i >= 0; i--) {
+                        TaskOp previous = pending.get(earlier.get(i));
+                        if (previous.getType() == TaskOp.Type.ADD || previous.getType() == TaskOp.Type.UPDATE) {
+                            previous.absorb(op);
+                            return;
+                        }
+                    }
+                }
+                append(op);
+                break;
+            case DELETE: {
+                boolean addedInBatch = false;
+                if (earlier != null) {
+                    for (int position : earlier) {
+                        addedInBatch |= pending.get(position).getType() == TaskOp.Type.ADD;
+                        pending.set(position, null);
+                    }
+                    positions.remove(op.getTaskId());
+                }
+                if (!addedInBatch) {
+                    append(op);
+                }
+                break;
+            }
+            default:
+                append(op);
+                break;
+        }
+    }
+
+    private void append(TaskOp op) {
+        List<Integer> own = positions.get(op.getTaskId());
+        if (own == null) {
+            own = new ArrayList<>(2);
+            positions.put(op.getTaskId(), own);
+        }
+        own.add(pending.size());
+        pending.add(op);
+    }
+
+    // Takes the buffered ops in order, without the merged-away ones.
+    private List<TaskOp> takePending() {
+        List<TaskOp> ops = new ArrayList<>(pending.size());
+        for (TaskOp op : pending) {
+            if (op != null) ops.add(op);
+        }
+        pending.clear();
+        positions.clear();
+        return ops;
+    }
+
+    private void drain() {
+        List<TaskOp> batch;
+        List<Runnable> callbacks;
+        synchronized (this) {
+            scheduled = false;
+            if (pending.isEmpty() && pendingCallbacks.isEmpty()) return;
+            batch = takePending();
+            callbacks = new ArrayList<>(pendingCallbacks);
+            pendingCallbacks.clear();
+            for (TaskOp op : batch) {
+                inFlightIds.add(op.getTaskId());
+            }
+        }
+
+        try {
+            if (!batch.isEmpty()) {
+                sink.write(batch);
+                writtenOps.addAndGet(batch.size());
+                batches.incrementAndGet();
+            }
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                // Put back in front without merging, so the ops are written again as they were.
+                List<TaskOp> since = takePending();
+                for (TaskOp op : batch) append(op);
+                for (TaskOp op : since) append(op);
+                pendingCallbacks.addAll(0, callbacks);
+                inFlightIds.clear();
+                failures++;
+                if (!scheduled) {
+                    scheduled = true;
+                    executor.schedule(this::drain, retryDelay(windowMs, failures), TimeUnit.MILLISECONDS);
+                }
+            }
+            return;
+        }
+        synchronized (this) {
+            inFlightIds.clear();
+            failures = 0;
+        }
+
+        for (Runnable callback : callbacks) {
+            callback.run();
+        }
+        Runnable after = afterBatch;
+        if (after != null) {
+            after.run();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.notes;
+
+import org.junit.Assume;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Arrays;
+
+/**
+ * Helpers for the *Benchmark unit tests. They time things rather than check behaviour, so they
+ * are skipped unless the build is run with -Pbenchmarks, and print their results instead of
+ * asserting on them.
+ */
+final class Benchmarks {
+    private Benchmarks() {}
+
+    static void assumeEnabled() {
+        Assume.assumeTrue("benchmarks run with -Pbenchmarks", Boolean.getBoolean("benchmarks"));
+    }
+
+    /** Bytes allocated so far by the calling thread; skips the benchmark on VMs that don't count them. */
+    static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("allocation counting unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    static long median(long[] values) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+}
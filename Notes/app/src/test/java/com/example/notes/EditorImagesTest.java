@@ -0,0 +1,23 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class EditorImagesTest {
+
+    @Test
+    public void decodesNoWiderThanTheEditorNeeds() {
+        assertEquals(1, EditorImages.sampleSize(800, 600, 700));
+        assertEquals(2, EditorImages.sampleSize(800, 600, 400));
+        assertEquals(4, EditorImages.sampleSize(4000, 3000, 700));
+        assertEquals(1, EditorImages.sampleSize(200, 900, 700));
+    }
+
+    @Test
+    public void costIsTheSampledBitmap() {
+        assertEquals(800L * 600 * 4, EditorImages.decodedBytes(800, 600, 700));
+        assertEquals(400L * 300 * 4, EditorImages.decodedBytes(800, 600, 400));
+        assertEquals(3L * 2 * 4, EditorImages.decodedBytes(5, 3, 2));
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.notes;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class ImageBlobStoreTest {
+    // About what Bitmap.compress writes for a large 800px photo.
+    private static final int IMAGE_BYTES = 1024 * 1024;
+    private static final int CHUNK = 4096;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] image() {
+        byte[] bytes = new byte[IMAGE_BYTES];
+        new Random(7).nextBytes(bytes);
+        return bytes;
+    }
+
+    // Hands the bytes over in small writes from one reused buffer, the way compress does.
+    private static ImageBlobStore.BlobSource chunked(byte[] image) {
+        byte[] chunk = new byte[CHUNK];
+        return out -> {
+            for (int i = 0; i < image.length; i += CHUNK) {
+                int n = Math.min(CHUNK, image.length - i);
+                System.arraycopy(image, i, chunk, 0, n);
+                out.write(chunk, 0, n);
+            }
+        };
+    }
+
+    @Test
+    public void streamedBlobIsStoredUnderItsHash() throws Exception {
+        ImageBlobStore store = new ImageBlobStore(folder.newFolder("images"));
+        byte[] image = image();
+        String hash = store.put(chunked(image));
+        assertEquals(ImageBlobStore.sha256(image), hash);
+        assertArrayEquals(image, Files.readAllBytes(store.file(hash).toPath()));
+
+        assertEquals(hash, store.put(chunked(image)));
+        File[] files = store.file(hash).getParentFile().listFiles((dir, name) -> name.endsWith(".tmp"));
+        assertEquals(0, files.length);
+    }
+
+    @Test
+    public void inlineImagesAreDecodedIntoBlobs() throws Exception {
+        ImageBlobStore store = new ImageBlobStore(folder.newFolder("images"));
+        byte[] image = Arrays.copyOf(image(), 30_000);
+        String source = "data:image/png;base64," + java.util.Base64.getMimeEncoder().encodeToString(image);
+        String hash = store.putInline(source);
+        assertEquals(ImageBlobStore.sha256(image), hash);
+        assertNull(store.putInline("https://example.com/a.png"));
+    }
+
+    private static String putOld(ImageBlobStore store, byte[] bytes) throws Exception {
+        String hash = store.put(out -> out.write(bytes));
+        assertTrue(store.file(hash).setLastModified(System.currentTimeMillis() - 2 * 60 * 60 * 1000L));
+        return hash;
+    }
+
+    @Test
+    public void sweepKeepsBlobsOfStoredTasksWhenTheCountsAreLost() throws Exception {
+        File dir = folder.newFolder("images");
+        ImageBlobStore store = new ImageBlobStore(dir);
+        String used = putOld(store, new byte[]{1});
+        String orphan = putOld(store, new byte[]{2});
+        store.retain(Collections.singletonList(used));
+        store.saveRefCounts();
+        Files.write(new File(dir, "refs.json").toPath(), "{not json".getBytes());
+
+        ImageBlobStore reopened = new ImageBlobStore(dir);
+        reopened.sweepOrphans(Arrays.asList(used, used));
+        assertTrue(reopened.file(used).exists());
+        assertFalse(reopened.file(orphan).exists());
+
+        // The counts were rebuilt from the tasks: two releases before the blob goes.
+        reopened.release(Collections.singletonList(used));
+        assertTrue(reopened.file(used).exists());
+        reopened.release(Collections.singletonList(used));
+        assertFalse(reopened.file(used).exists());
+    }
+
+    @Test
+    public void releaseWithoutACountKeepsTheBlob() throws Exception {
+        ImageBlobStore store = new ImageBlobStore(folder.newFolder("images"));
+        String hash = putOld(store, new byte[]{3});
+        store.release(Collections.singletonList(hash));
+        assertTrue(store.file(hash).exists());
+    }
+
+    @Test
+    public void base64IsDecodedForEveryPaddingAndRejectsOtherText() throws Exception {
+        for (int size = 0; size < 6; size++) {
+            byte[] bytes = Arrays.copyOf(image(), size);
+            String text = java.util.Base64.getEncoder().encodeToString(bytes);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            ImageBlobStore.decodeBase64("x," + text + "\n", 2, out);
+            assertArrayEquals(bytes, out.toByteArray());
+        }
+        try {
+            ImageBlobStore.decodeBase64("QU*J", 0, new ByteArrayOutputStream());
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void streamingKeepsPeakAllocationBounded() throws Exception {
+        ImageBlobStore store = new ImageBlobStore(folder.newFolder("images"));
+        byte[] image = image();
+        ImageBlobStore.BlobSource source = chunked(image);
+        store.put(source);
+
+        long before = allocatedBytes();
+        store.put(source);
+        long streamed = allocatedBytes() - before;
+
+        assertTrue("streamed put allocated " + streamed + " bytes", streamed < 64 * 1024);
+    }
+
+    // Skips the test on VMs that don't count allocations, rather than passing with nothing measured.
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue("allocation counting unavailable", bean instanceof com.sun.management.ThreadMXBean);
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,54 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class ImageEncoderTest {
+
+    @Test
+    public void findsTheHighestQualityThatFitsTheBudget() {
+        // 1 KB per quality step.
+        assertEquals(70, ImageEncoder.searchQuality(q -> q * 1024L, 40, 90, 70 * 1024));
+        assertEquals(70, ImageEncoder.searchQuality(q -> q * 1024L, 40, 90, 70 * 1024 + 1023));
+        assertEquals(90, ImageEncoder.searchQuality(q -> q * 1024L, 40, 90, 1024 * 1024));
+    }
+
+    @Test
+    public void fallsBackToTheLowestQualityWhenNothingFits() {
+        assertEquals(40, ImageEncoder.searchQuality(q -> q * 1024L, 40, 90, 10));
+    }
+
+    @Test
+    public void encodesOnlyAFewTimes() {
+        List<Integer> tried = new ArrayList<>();
+        ImageEncoder.searchQuality(q -> {
+            tried.add(q);
+            return q * 1024L;
+        }, 40, 90, 63 * 1024);
+        assertTrue(tried.toString(), tried.size() <= 6);
+    }
+
+    @Test
+    public void fewColorsOrAlphaMakeAGraphic() {
+        int[] flat = new int[1000];
+        for (int i = 0; i < flat.length; i++) flat[i] = i % 3 == 0 ? 0xFFFFFFFF : 0xFF202020;
+        assertTrue(ImageEncoder.looksLikeGraphic(flat, flat.length, false));
+
+        int[] photo = new int[1000];
+        for (int i = 0; i < photo.length; i++) photo[i] = 0xFF000000 | (i * 7919);
+        assertFalse(ImageEncoder.looksLikeGraphic(photo, photo.length, false));
+        assertTrue(ImageEncoder.looksLikeGraphic(photo, photo.length, true));
+    }
+
+    @Test
+    public void countsWithoutKeepingBytes() {
+        ImageEncoder.CountingStream counter = new ImageEncoder.CountingStream();
+        counter.write(1);
+        counter.write(new byte[100], 10, 50);
+        assertEquals(51, counter.count);
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImageIngestorTest {
+
+    @Test
+    public void samplesDownWhileTheLongSideStaysCovered() {
+        assertEquals(1, ImageIngestor.sampleSize(800, 600));
+        assertEquals(1, ImageIngestor.sampleSize(1599, 1200));
+        assertEquals(2, ImageIngestor.sampleSize(1600, 1200));
+        assertEquals(4, ImageIngestor.sampleSize(3000, 4000));
+        assertEquals(1, ImageIngestor.sampleSize(100, 100));
+    }
+
+    @Test
+    public void scalesTheLongSideToTheLimit() {
+        assertArrayEquals(new int[]{800, 600}, ImageIngestor.scaledSize(1000, 750));
+        assertArrayEquals(new int[]{600, 800}, ImageIngestor.scaledSize(750, 1000));
+        assertArrayEquals(new int[]{800, 800}, ImageIngestor.scaledSize(1000, 1000));
+        assertArrayEquals(new int[]{800, 1}, ImageIngestor.scaledSize(5000, 2));
+        assertArrayEquals(new int[]{640, 480}, ImageIngestor.scaledSize(640, 480));
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImagePreviewRendererTest {
+
+    @Test
+    public void previewKeepsTheScaledAspectInsideTheView() {
+        // A 1000x500 source at 100% x 200% is square.
+        assertArrayEquals(new int[]{300, 300}, ImagePreviewRenderer.previewSize(1000, 500, 1f, 2f, 1080, 300));
+        assertArrayEquals(new int[]{1080, 108}, ImagePreviewRenderer.previewSize(1000, 500, 5f, 1f, 1080, 300));
+    }
+
+    @Test
+    public void previewNeverExceedsTheView() {
+        int[] size = ImagePreviewRenderer.previewSize(4000, 3000, 5f, 5f, 1080, 800);
+        assertTrue(size[0] <= 1080 && size[1] <= 800);
+        assertArrayEquals(new int[]{200, 100}, ImagePreviewRenderer.previewSize(100, 50, 2f, 2f, 1080, 800));
+    }
+
+    @Test
+    public void exportScalesTheOriginalPixels() {
+        assertArrayEquals(new int[]{8000, 3000}, ImagePreviewRenderer.exportSize(4000, 3000, 2f, 1f, Long.MAX_VALUE));
+        assertArrayEquals(new int[]{1, 1}, ImagePreviewRenderer.exportSize(1, 1, 0.1f, 0.1f, Long.MAX_VALUE));
+    }
+
+    @Test
+    public void exportIsShrunkToThePixelBudget() {
+        assertArrayEquals(new int[]{4000, 1500}, ImagePreviewRenderer.exportSize(4000, 3000, 2f, 1f, 6_000_000));
+        assertArrayEquals(new int[]{8000, 3000}, ImagePreviewRenderer.exportSize(4000, 3000, 2f, 1f, 24_000_000));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.notes;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class JournaledTaskStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Task task(String id, String title) {
+        Task task = new Task(title, title);
+        task.setId(id);
+        return task;
+    }
+
+    private static List<String> ids(List<TaskHeader> headers) {
+        List<String> ids = new ArrayList<>();
+        for (TaskHeader header : headers) {
+            ids.add(header.getId());
+        }
+        return ids;
+    }
+
+    private JournaledTaskStore open() {
+        return new JournaledTaskStore(new TaskFileStore(folder.getRoot()), new TaskJournal(folder.getRoot()));
+    }
+
+    @Test
+    public void pagesFollowTheLastHeaderOfThePreviousPage() throws IOException {
+        JournaledTaskStore store = open();
+        List<TaskOp> ops = new ArrayList<>();
+        for (int i = 1; i <= 5; i++) {
+            ops.add(TaskOp.add(task(String.valueOf(i), "task " + i)));
+        }
+        store.apply(ops);
+
+        List<TaskHeader> first = store.loadPage(false, null, 2);
+        assertEquals(Arrays.asList("5", "4"), ids(first));
+        List<TaskHeader> second = store.loadPage(false, first.get(1), 2);
+        assertEquals(Arrays.asList("3", "2"), ids(second));
+        List<TaskHeader> last = store.loadPage(false, second.get(1), 2);
+        assertEquals(Collections.singletonList("1"), ids(last));
+        assertEquals(5, store.count(false));
+    }
+
+    @Test
+    public void reopeningReplaysTheJournal() throws IOException {
+        JournaledTaskStore store = open();
+        store.apply(Arrays.asList(TaskOp.add(task("1", "one")), TaskOp.add(task("2", "two"))));
+        Task edited = task("2", "two edited");
+        store.apply(Arrays.asList(TaskOp.complete("1"), TaskOp.update(edited)));
+
+        JournaledTaskStore reopened = open();
+        assertEquals(Collections.singletonList("2"), ids(reopened.loadPage(false, null, 10)));
+        assertEquals(Collections.singletonList("1"), ids(reopened.loadPage(true, null, 10)));
+        assertEquals("two edited", reopened.getTask("2").getTitle());
+        assertTrue(reopened.getTask("1").isCompleted());
+    }
+
+    @Test
+    public void importsFiftyThousandTasksAsOneBatch() throws IOException {
+        JournaledTaskStore store = open();
+        int count = 50_000;
+        List<TaskOp> ops = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task imported = new Task("Заметка " + i, "Текст заметки номер " + i);
+            ops.add(TaskOp.add(imported));
+        }
+
+        long start = System.nanoTime();
+        store.apply(ops);
+        long nanos = System.nanoTime() - start;
+
+        assertEquals(count, store.count(false));
+        assertEquals(ops.get(count - 1).getTaskId(), store.loadPage(false, null, 1).get(0).getId());
+        System.out.println(String.format("Import of %dk tasks in one batch: %.0f ms", count / 1000, nanos / 1e6));
+    }
+}
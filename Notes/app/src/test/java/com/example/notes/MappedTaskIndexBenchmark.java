@@ -0,0 +1,82 @@
+package com.example.notes;
+
+import com.google.gson.Gson;
+import com.google.gson.reflect.TypeToken;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parse time and allocation of the task index as Gson JSON against opening the mapped binary
+ * index and reading its headers, for 25k tasks.
+ */
+public class MappedTaskIndexBenchmark {
+    private static final int ROUNDS = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Before
+    public void optIn() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void reportsParseCostAgainstGson() throws IOException {
+        List<TaskHeader> active = MappedTaskIndexTest.headers(20_000, false);
+        List<TaskHeader> completed = MappedTaskIndexTest.headers(5_000, true);
+        File binary = folder.newFile("index.bin");
+        MappedTaskIndex.write(binary, active, completed);
+        TaskFileStore.Index index = new TaskFileStore.Index();
+        index.tasks = active;
+        index.completed = completed;
+        Gson gson = new Gson();
+        String json = gson.toJson(index);
+        Type type = new TypeToken<TaskFileStore.Index>() {}.getType();
+
+        long[] gsonNanos = new long[ROUNDS];
+        long[] gsonAlloc = new long[ROUNDS];
+        long[] mappedNanos = new long[ROUNDS];
+        long[] mappedAlloc = new long[ROUNDS];
+        for (int round = -3; round < ROUNDS; round++) {
+            long allocBefore = Benchmarks.allocatedBytes();
+            long start = System.nanoTime();
+            TaskFileStore.Index parsed = gson.fromJson(json, type);
+            long nanos = System.nanoTime() - start;
+            long alloc = Benchmarks.allocatedBytes() - allocBefore;
+            assertEquals(active.size(), parsed.tasks.size());
+            if (round >= 0) {
+                gsonNanos[round] = nanos;
+                gsonAlloc[round] = alloc;
+            }
+
+            allocBefore = Benchmarks.allocatedBytes();
+            start = System.nanoTime();
+            MappedTaskIndex mapped = MappedTaskIndex.open(binary);
+            List<TaskHeader> tasks = mapped.headers(false);
+            List<TaskHeader> done = mapped.headers(true);
+            nanos = System.nanoTime() - start;
+            alloc = Benchmarks.allocatedBytes() - allocBefore;
+            assertEquals(active.size(), tasks.size());
+            assertEquals(completed.size(), done.size());
+            if (round >= 0) {
+                mappedNanos[round] = nanos;
+                mappedAlloc[round] = alloc;
+            }
+        }
+
+        System.out.println(String.format(
+                "Task index, 25k headers, median of %d: Gson %.2f ms / %d KB allocated; mapped %.2f ms / %d KB allocated",
+                ROUNDS, Benchmarks.median(gsonNanos) / 1e6, Benchmarks.median(gsonAlloc) / 1024,
+                Benchmarks.median(mappedNanos) / 1e6, Benchmarks.median(mappedAlloc) / 1024));
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.notes;
+
+import com.google.gson.Gson;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MappedTaskIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final Gson gson = new Gson();
+
+    static List<TaskHeader> headers(int count, boolean completed) {
+        List<TaskHeader> headers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Task task = new Task("Задача " + i, i % 3 == 0
+                    ? "Текст &amp; <br/>" + ImageBlobStore.imageTag(ImageBlobStore.sha256(new byte[]{(byte) i}))
+                    : "Описание номер " + i);
+            task.setId(String.valueOf(1_000_000L + i));
+            task.setCreatedAt(1_700_000_000_000L + i);
+            task.setCompleted(completed);
+            headers.add(TaskHeader.from(task));
+        }
+        return headers;
+    }
+
+    @Test
+    public void roundTripMatchesJsonRepresentation() throws IOException {
+        List<TaskHeader> active = headers(50, false);
+        List<TaskHeader> completed = headers(7, true);
+        File file = folder.newFile("index.bin");
+        MappedTaskIndex.write(file, active, completed);
+
+        MappedTaskIndex mapped = MappedTaskIndex.open(file);
+        assertEquals(50, mapped.getActiveCount());
+        assertEquals(7, mapped.getCompletedCount());
+        assertEquals(gson.toJson(active), gson.toJson(mapped.headers(false)));
+        assertEquals(gson.toJson(completed), gson.toJson(mapped.headers(true)));
+
+        TaskHeader header = mapped.header(mapped.recordNumber(true, 3));
+        assertEquals(completed.get(3).getId(), header.getId());
+        assertTrue(header.isCompleted());
+        assertTrue(mapped.header(mapped.recordNumber(false, 0)).hasImage());
+        assertFalse(mapped.header(mapped.recordNumber(false, 1)).hasImage());
+    }
+
+    @Test
+    public void nullFieldsSurviveRoundTrip() throws IOException {
+        TaskHeader header = new TaskHeader("1", null, false, 5L, "", null);
+        File file = folder.newFile("index.bin");
+        MappedTaskIndex.write(file, Collections.singletonList(header), Collections.emptyList());
+
+        TaskHeader read = MappedTaskIndex.open(file).header(0);
+        assertNull(read.getTitle());
+        assertNull(read.getFirstImage());
+        assertEquals(gson.toJson(header), gson.toJson(read));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsUnknownVersion() throws IOException {
+        File file = folder.newFile("index.bin");
+        MappedTaskIndex.write(file, headers(2, false), Collections.emptyList());
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(4);
+            raf.writeInt(MappedTaskIndex.FORMAT_VERSION + 1);
+        }
+        MappedTaskIndex.open(file);
+    }
+
+    @Test
+    public void jsonIndexIsMigratedToBinary() throws IOException {
+        File dir = folder.newFolder("tasks");
+        TaskFileStore.Index legacy = new TaskFileStore.Index();
+        legacy.tasks = headers(4, false);
+        legacy.completed = headers(2, true);
+        Files.write(new File(dir, "index.json").toPath(), gson.toJson(legacy).getBytes(StandardCharsets.UTF_8));
+
+        TaskFileStore store = new TaskFileStore(dir);
+        MappedTaskIndex mapped = store.mapIndex();
+
+        assertNotNull(mapped);
+        assertFalse(new File(dir, "index.json").exists());
+        assertTrue(new File(dir, "index.bin").exists());
+        assertEquals(gson.toJson(legacy.tasks), gson.toJson(mapped.headers(false)));
+        assertEquals(gson.toJson(legacy.completed), gson.toJson(mapped.headers(true)));
+    }
+}
@@ -0,0 +1,107 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class NoteDocumentTest {
+
+    private static String hash(int i) {
+        return String.format("%064x", i);
+    }
+
+    private static NoteDocument sample() {
+        String text = "список: <a> & \"b\"\nвторая строка";
+        return new NoteDocument.Builder()
+                .text(text, 0, text.length())
+                .lineBreak()
+                .image(hash(1))
+                .text("между", 0, 5)
+                .image(hash(2))
+                .imageSource("https://example.com/a.png?x=1&y=2")
+                .lineBreak()
+                .build();
+    }
+
+    @Test
+    public void neighbouringTextAndBreaksJoinIntoOneRun() {
+        NoteDocument document = sample();
+        assertEquals(6, document.size());
+        assertEquals(NoteDocument.TEXT, document.type(0));
+        assertEquals("список: <a> & \"b\"\nвторая строка\n", document.value(0));
+        assertEquals(NoteDocument.IMAGE, document.type(1));
+        assertEquals(NoteDocument.IMAGE_SOURCE, document.type(4));
+        assertEquals("\n", document.value(5));
+        assertEquals(new ArrayList<>(Arrays.asList(hash(1), hash(2))), new ArrayList<>(document.imageRefs()));
+        assertEquals(hash(1), document.firstImageRef());
+        assertSame(NoteDocument.EMPTY, new NoteDocument.Builder().build());
+    }
+
+    @Test
+    public void encodedFormRoundTrips() {
+        NoteDocument document = sample();
+        String stored = document.encode();
+        assertTrue(NoteDocument.isEncoded(stored));
+        assertEquals(document, NoteDocument.decode(stored));
+        assertEquals(stored, NoteDocument.decode(stored).encode());
+        assertSame(NoteDocument.EMPTY, NoteDocument.decode(null));
+        assertEquals(NoteDocument.EMPTY, NoteDocument.decode(NoteDocument.EMPTY.encode()));
+    }
+
+    @Test
+    public void encodedFormIsSmallerThanTheHtml() {
+        NoteDocument document = sample();
+        assertTrue(document.encode().length() < document.toHtml().length());
+    }
+
+    @Test
+    public void htmlConversionIsLossless() {
+        NoteDocument document = sample();
+        assertEquals(document, NoteDocument.fromHtml(document.toHtml()));
+
+        // What the editor wrote before the document model converts back to the same HTML.
+        String html = "a &amp; b<br/>" + ImageBlobStore.imageTag(hash(3)) + "<br/>&lt;c&gt;";
+        assertEquals(html, NoteDocument.fromHtml(html).toHtml());
+    }
+
+    @Test
+    public void legacyHtmlIsReadThroughTheTokenizer() {
+        NoteDocument document = NoteDocument.decode("<p dir=\"ltr\">one<br>two</p><img src=\"blob:"
+                + hash(4) + "\" /><img src=\"data:image/png;base64,AAAA\"><img>");
+        assertEquals(4, document.size());
+        assertEquals("one\ntwo", document.value(0));
+        assertEquals(hash(4), document.value(1));
+        assertEquals("data:image/png;base64,AAAA", document.value(2));
+        assertEquals("", document.value(3));
+        assertEquals("одна строка", NoteDocument.decode("одна строка").value(0));
+    }
+
+    @Test
+    public void damagedTailKeepsTheRunsBeforeIt() {
+        String stored = sample().encode();
+        NoteDocument document = NoteDocument.decode(stored.substring(0, stored.length() - 10));
+        assertEquals(sample().value(0), document.value(0));
+        assertEquals(hash(2), document.value(3));
+        assertTrue(document.size() < sample().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void imageRunsTakeOnlyBlobHashes() {
+        new NoteDocument.Builder().image("abc");
+    }
+
+    @Test
+    public void taskKeepsTheDocumentItWasGiven() {
+        Task task = new Task("t", "старый <b>текст</b>");
+        assertEquals("старый текст", task.getDocument().value(0));
+        NoteDocument document = sample();
+        task.setDocument(document);
+        assertSame(document, task.getDocument());
+        assertEquals(document.encode(), task.getDescription());
+        task.setDescription(null);
+        assertTrue(task.getDocument().isEmpty());
+    }
+}
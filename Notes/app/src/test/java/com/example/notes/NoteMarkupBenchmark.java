@@ -0,0 +1,86 @@
+package com.example.notes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Parsing and serializing notes with 1, 10 and 50 images through {@link NoteMarkup} against the
+ * regex code the editor used before it, per note.
+ */
+public class NoteMarkupBenchmark {
+    private static final int ROUNDS = 5;
+
+    @Before
+    public void optIn() {
+        Benchmarks.assumeEnabled();
+    }
+
+    // The editor's getHtmlContent before the writer.
+    private static String legacySerialize(String text, List<String> refs) {
+        StringBuilder html = new StringBuilder();
+        int imageIndex = 0;
+        for (String line : text.split("\n")) {
+            String lineWithImages = line;
+            while (lineWithImages.contains(NoteMarkupTest.MARKER) && imageIndex < refs.size()) {
+                lineWithImages = lineWithImages.replaceFirst(Pattern.quote(NoteMarkupTest.MARKER),
+                        ImageBlobStore.imageTag(refs.get(imageIndex)));
+                imageIndex++;
+            }
+            html.append(lineWithImages).append("<br/>");
+        }
+        return html.toString();
+    }
+
+    @Test
+    public void reportsParseAndSerializeCostAgainstTheRegexCode() {
+        for (int images : new int[]{1, 10, 50}) {
+            String html = NoteMarkupTest.note(images);
+            List<String> refs = new ArrayList<>();
+            String text = NoteMarkupTest.parse(html, refs);
+            int iterations = 20_000 / images;
+
+            long[] legacyParse = new long[ROUNDS];
+            long[] tokenParse = new long[ROUNDS];
+            long[] legacySerialize = new long[ROUNDS];
+            long[] writerSerialize = new long[ROUNDS];
+            int sink = 0;
+            for (int round = -1; round < ROUNDS; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) sink += NoteMarkupTest.legacyParse(html, new ArrayList<>()).length();
+                long legacyParseTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) sink += NoteMarkupTest.parse(html, new ArrayList<>()).length();
+                long tokenParseTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) sink += legacySerialize(text, refs).length();
+                long legacySerializeTime = System.nanoTime() - start;
+
+                start = System.nanoTime();
+                for (int i = 0; i < iterations; i++) sink += NoteMarkupTest.serialize(text, refs).length();
+                long writerSerializeTime = System.nanoTime() - start;
+
+                if (round >= 0) {
+                    legacyParse[round] = legacyParseTime;
+                    tokenParse[round] = tokenParseTime;
+                    legacySerialize[round] = legacySerializeTime;
+                    writerSerialize[round] = writerSerializeTime;
+                }
+            }
+            assertTrue(sink > 0);
+            System.out.println(String.format(
+                    "%d images, per note, median of %d: parse regex %.1f us, tokenizer %.1f us; serialize regex %.1f us, writer %.1f us",
+                    images, ROUNDS, Benchmarks.median(legacyParse) / 1e3 / iterations,
+                    Benchmarks.median(tokenParse) / 1e3 / iterations,
+                    Benchmarks.median(legacySerialize) / 1e3 / iterations,
+                    Benchmarks.median(writerSerialize) / 1e3 / iterations));
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class NoteMarkupTest {
+    static final String MARKER = "[IMG]";
+
+    static String hash(int i) {
+        return String.format("%064x", i);
+    }
+
+    static String note(int images) {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < images; i++) {
+            html.append("Абзац ").append(i).append(": молоко &amp; хлеб, 2 &lt; 3<br/>")
+                    .append("ещё одна строка текста заметки<br/>")
+                    .append(ImageBlobStore.imageTag(hash(i))).append("<br/>");
+        }
+        return html.append("конец").toString();
+    }
+
+    // What the editor does with a description: text with a marker per image, and the refs.
+    static String parse(String html, List<String> refs) {
+        StringBuilder text = new StringBuilder(html.length());
+        NoteMarkup.Tokenizer tokens = new NoteMarkup.Tokenizer(html);
+        for (int type = tokens.next(); type != NoteMarkup.Tokenizer.END; type = tokens.next()) {
+            if (type == NoteMarkup.Tokenizer.TEXT) {
+                tokens.appendText(text);
+            } else if (type == NoteMarkup.Tokenizer.LINE_BREAK) {
+                text.append('\n');
+            } else if (tokens.imageRef() != null) {
+                refs.add(tokens.imageRef());
+                text.append(MARKER);
+            }
+        }
+        return text.toString();
+    }
+
+    static String serialize(String text, List<String> refs) {
+        NoteMarkup.Writer html = new NoteMarkup.Writer(text.length() + refs.size() * 100);
+        int runStart = 0;
+        int imageIndex = 0;
+        int at = text.indexOf(MARKER);
+        while (at >= 0 && imageIndex < refs.size()) {
+            html.text(text, runStart, at).image(refs.get(imageIndex++));
+            runStart = at + MARKER.length();
+            at = text.indexOf(MARKER, runStart);
+        }
+        return html.text(text, runStart, text.length()).toString();
+    }
+
+    // The editor's code before the tokenizer, kept here to compare against.
+    private static final Pattern LEGACY_SRC_PATTERN =
+            Pattern.compile("src=\"(?:blob:([0-9a-f]{64})|data:image/jpeg;base64,([^\"]+))\"");
+
+    static String legacyParse(String html, List<String> refs) {
+        Matcher matcher = LEGACY_SRC_PATTERN.matcher(html);
+        while (matcher.find()) {
+            if (matcher.group(1) != null) refs.add(matcher.group(1));
+        }
+        return html
+                .replaceAll("<img[^>]*>", MARKER)
+                .replace("<br/>", "\n")
+                .replace("<br>", "\n")
+                .replaceAll("<[^>]*>", "")
+                .replace("&amp;", "&")
+                .replace("&lt;", "<")
+                .replace("&gt;", ">")
+                .replace("&quot;", "\"")
+                .replace("&#39;", "'");
+    }
+
+    @Test
+    public void tokensCoverTextBreaksImagesAndEntities() {
+        String html = "<p dir=\"ltr\">a &amp; b<br>c</p>\n<img src=\"blob:" + hash(7) + "\" /><IMG SRC=\"x\">&bogus; <b";
+        NoteMarkup.Tokenizer tokens = new NoteMarkup.Tokenizer(html);
+        List<String> seen = new ArrayList<>();
+        for (int type = tokens.next(); type != NoteMarkup.Tokenizer.END; type = tokens.next()) {
+            if (type == NoteMarkup.Tokenizer.TEXT) {
+                StringBuilder text = new StringBuilder();
+                tokens.appendText(text);
+                seen.add(text.toString());
+            } else if (type == NoteMarkup.Tokenizer.LINE_BREAK) {
+                seen.add("BR");
+            } else {
+                seen.add("IMG:" + tokens.imageRef());
+            }
+        }
+        assertEquals(Arrays.asList("a ", "&", " b", "BR", "c", "\n", "IMG:" + hash(7), "IMG:null",
+                "&bogus; ", "<b"), seen);
+    }
+
+    @Test
+    public void nbspStaysNonBreaking() {
+        String html = "a &nbsp;&nbsp;b";
+        assertEquals("a \u00A0\u00A0b", parse(html, new ArrayList<>()));
+    }
+
+    @Test
+    public void editorTextRoundTripsLosslessly() {
+        String text = "список: <a> & \"b\"\n" + MARKER + "\n\nпосле " + MARKER;
+        List<String> refs = Arrays.asList(hash(1), hash(2));
+        String html = serialize(text, refs);
+        List<String> parsedRefs = new ArrayList<>();
+        assertEquals(text, parse(html, parsedRefs));
+        assertEquals(refs, parsedRefs);
+        assertEquals(html, serialize(parse(html, new ArrayList<>()), refs));
+    }
+
+    @Test
+    public void matchesTheRegexCodeOnExistingNotes() {
+        String html = note(3);
+        List<String> refs = new ArrayList<>();
+        List<String> legacyRefs = new ArrayList<>();
+        assertEquals(legacyParse(html, legacyRefs), parse(html, refs));
+        assertEquals(legacyRefs, refs);
+        assertEquals(new ArrayList<>(NoteDocument.fromHtml(html).imageRefs()), refs);
+        assertEquals(hash(0), NoteDocument.fromHtml(html).firstImageRef());
+    }
+
+    @Test
+    public void matchesTheRegexCodeOnNotesWithManyImages() {
+        for (int images : new int[]{1, 10, 50}) {
+            String html = note(images);
+            List<String> refs = new ArrayList<>();
+            List<String> legacyRefs = new ArrayList<>();
+            String text = parse(html, refs);
+            assertEquals(legacyParse(html, legacyRefs), text);
+            assertEquals(legacyRefs, refs);
+            assertEquals(images, refs.size());
+
+            List<String> reparsedRefs = new ArrayList<>();
+            assertEquals(text, parse(serialize(text, refs), reparsedRefs));
+            assertEquals(refs, reparsedRefs);
+        }
+    }
+}
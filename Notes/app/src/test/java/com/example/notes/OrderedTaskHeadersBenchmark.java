@@ -0,0 +1,101 @@
+package com.example.notes;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * A batch of 1000 adds at the front, 1000 completes and 1000 deletes of random tasks, done by
+ * position in ArrayLists as DataManager used to and by id in {@link OrderedTaskHeaders}, at
+ * 10k and 100k tasks.
+ */
+public class OrderedTaskHeadersBenchmark {
+    private static final int ROUNDS = 5;
+    private static final int BATCH = 1_000;
+
+    @Before
+    public void optIn() {
+        Benchmarks.assumeEnabled();
+    }
+
+    @Test
+    public void reportsBatchCostAt10k() {
+        report(10_000);
+    }
+
+    @Test
+    public void reportsBatchCostAt100k() {
+        report(100_000);
+    }
+
+    private static void report(int size) {
+        List<TaskHeader> initial = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            initial.add(OrderedTaskHeadersTest.header(String.valueOf(i)));
+        }
+        List<TaskHeader> added = new ArrayList<>(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            added.add(OrderedTaskHeadersTest.header("new" + i));
+        }
+        List<String> picked = new ArrayList<>();
+        Random random = new Random(size);
+        boolean[] taken = new boolean[size];
+        while (picked.size() < 2 * BATCH) {
+            int id = random.nextInt(size);
+            if (!taken[id]) {
+                taken[id] = true;
+                picked.add(String.valueOf(id));
+            }
+        }
+        List<String> toComplete = picked.subList(0, BATCH);
+        List<String> toDelete = picked.subList(BATCH, 2 * BATCH);
+
+        long[] listNanos = new long[ROUNDS];
+        long[] orderedNanos = new long[ROUNDS];
+        for (int round = -1; round < ROUNDS; round++) {
+            List<TaskHeader> tasks = new ArrayList<>(initial);
+            List<TaskHeader> completed = new ArrayList<>();
+            long start = System.nanoTime();
+            for (TaskHeader header : added) {
+                tasks.add(0, header);
+            }
+            for (String id : toComplete) {
+                completed.add(0, tasks.remove(OrderedTaskHeadersTest.positionOf(tasks, id)));
+            }
+            for (String id : toDelete) {
+                tasks.remove(OrderedTaskHeadersTest.positionOf(tasks, id));
+            }
+            long listTime = System.nanoTime() - start;
+
+            OrderedTaskHeaders ordered = new OrderedTaskHeaders(initial);
+            OrderedTaskHeaders orderedCompleted = new OrderedTaskHeaders();
+            start = System.nanoTime();
+            for (TaskHeader header : added) {
+                ordered.addFirst(header);
+            }
+            for (String id : toComplete) {
+                orderedCompleted.addFirst(ordered.remove(id));
+            }
+            for (String id : toDelete) {
+                ordered.remove(id);
+            }
+            long orderedTime = System.nanoTime() - start;
+
+            assertEquals(tasks.size(), ordered.size());
+            if (round >= 0) {
+                listNanos[round] = listTime;
+                orderedNanos[round] = orderedTime;
+            }
+        }
+
+        System.out.println(String.format(
+                "%dk tasks, %d adds + %d completes + %d deletes, median of %d: ArrayList by position %.2f ms; by id %.2f ms",
+                size / 1000, BATCH, BATCH, BATCH, ROUNDS,
+                Benchmarks.median(listNanos) / 1e6, Benchmarks.median(orderedNanos) / 1e6));
+    }
+}
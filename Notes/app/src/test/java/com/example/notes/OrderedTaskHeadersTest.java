@@ -0,0 +1,130 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class OrderedTaskHeadersTest {
+
+    static TaskHeader header(String id) {
+        Task task = new Task("Задача " + id, "Описание " + id);
+        task.setId(id);
+        return TaskHeader.from(task);
+    }
+
+    static List<String> ids(Iterable<TaskHeader> headers) {
+        List<String> ids = new ArrayList<>();
+        for (TaskHeader header : headers) {
+            ids.add(header.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void keepsOrderAcrossAddsMovesAndRemoves() {
+        OrderedTaskHeaders headers = new OrderedTaskHeaders();
+        headers.addFirst(header("1"));
+        headers.addFirst(header("2"));
+        headers.addLast(header("3"));
+        assertEquals(Arrays.asList("2", "1", "3"), ids(headers));
+
+        headers.addFirst(header("3"));
+        assertEquals(Arrays.asList("3", "2", "1"), ids(headers));
+
+        assertEquals("2", headers.remove("2").getId());
+        assertNull(headers.remove("2"));
+        assertEquals(Arrays.asList("3", "1"), ids(headers));
+
+        headers.remove("3");
+        headers.remove("1");
+        assertTrue(headers.isEmpty());
+        headers.addLast(header("4"));
+        assertEquals(Collections.singletonList("4"), ids(headers));
+    }
+
+    @Test
+    public void replaceKeepsPositionAndPagesFollowTheGivenId() {
+        OrderedTaskHeaders headers = new OrderedTaskHeaders(
+                Arrays.asList(header("1"), header("2"), header("3"), header("4")));
+        Task edited = new Task("edited", "");
+        edited.setId("2");
+        assertTrue(headers.replace(TaskHeader.from(edited)));
+        assertFalse(headers.replace(header("9")));
+        assertEquals("edited", headers.get("2").getTitle());
+
+        assertEquals(Arrays.asList("1", "2"), ids(headers.page(null, 2)));
+        assertEquals(Arrays.asList("3", "4"), ids(headers.page("2", 5)));
+        assertTrue(headers.page("4", 5).isEmpty());
+        assertTrue(headers.page("9", 5).isEmpty());
+
+        assertEquals(Arrays.asList("2", "3"), ids(headers.range(1, 2)));
+        assertEquals(Arrays.asList("3", "4"), ids(headers.range(2, 5)));
+        assertEquals(Collections.singletonList("4"), ids(headers.range(3, 1)));
+        assertTrue(headers.range(4, 5).isEmpty());
+    }
+
+    // k adds at the front, then completing and deleting k tasks picked at random, done both
+    // by position in a plain list and by id.
+    @Test
+    public void matchesPositionalListsOverABatch() {
+        int size = 10_000;
+        int k = 1_000;
+        List<TaskHeader> initial = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            initial.add(header(String.valueOf(i)));
+        }
+        List<TaskHeader> added = new ArrayList<>(k);
+        for (int i = 0; i < k; i++) {
+            added.add(header("new" + i));
+        }
+        List<String> picked = new ArrayList<>();
+        Random random = new Random(size);
+        while (picked.size() < 2 * k) {
+            String id = String.valueOf(random.nextInt(size));
+            if (!picked.contains(id)) picked.add(id);
+        }
+        List<String> toComplete = picked.subList(0, k);
+        List<String> toDelete = picked.subList(k, 2 * k);
+
+        List<TaskHeader> tasks = new ArrayList<>(initial);
+        List<TaskHeader> completed = new ArrayList<>();
+        for (TaskHeader header : added) {
+            tasks.add(0, header);
+        }
+        for (String id : toComplete) {
+            completed.add(0, tasks.remove(positionOf(tasks, id)));
+        }
+        for (String id : toDelete) {
+            tasks.remove(positionOf(tasks, id));
+        }
+
+        OrderedTaskHeaders ordered = new OrderedTaskHeaders(initial);
+        OrderedTaskHeaders orderedCompleted = new OrderedTaskHeaders();
+        for (TaskHeader header : added) {
+            ordered.addFirst(header);
+        }
+        for (String id : toComplete) {
+            orderedCompleted.addFirst(ordered.remove(id));
+        }
+        for (String id : toDelete) {
+            ordered.remove(id);
+        }
+
+        assertEquals(size - k, ordered.size());
+        assertEquals(ids(tasks), ids(ordered));
+        assertEquals(ids(completed), ids(orderedCompleted));
+    }
+
+    static int positionOf(List<TaskHeader> headers, String id) {
+        for (int i = 0; i < headers.size(); i++) {
+            if (headers.get(i).getId().equals(id)) return i;
+        }
+        return -1;
+    }
+}
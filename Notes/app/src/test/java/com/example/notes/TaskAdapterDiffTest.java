@@ -0,0 +1,40 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TaskAdapterDiffTest {
+
+    private static TaskHeader header(String id, String title, String description) {
+        Task task = new Task(title, description);
+        task.setId(id);
+        return TaskHeader.from(task);
+    }
+
+    private static String hash(char c) {
+        return new String(new char[64]).replace('\0', c);
+    }
+
+    @Test
+    public void rowsAreMatchedByIdAndComparedOnShownFields() {
+        TaskHeader original = header("1", "title", "text");
+        assertTrue(TaskAdapter.DIFF.areItemsTheSame(original, header("1", "other", "other")));
+        assertFalse(TaskAdapter.DIFF.areItemsTheSame(original, header("2", "title", "text")));
+
+        assertTrue(TaskAdapter.DIFF.areContentsTheSame(original, header("1", "title", "text")));
+        assertFalse(TaskAdapter.DIFF.areContentsTheSame(original, header("1", "title", "changed")));
+        TaskHeader completed = header("1", "title", "text");
+        completed.setCompleted(true);
+        assertFalse(TaskAdapter.DIFF.areContentsTheSame(original, completed));
+    }
+
+    @Test
+    public void textOnlyChangesKeepTheImage() {
+        String image = "<img src=\"blob:" + hash('a') + "\" />";
+        TaskHeader before = header("1", "title", "text" + image);
+        assertEquals(TaskAdapter.PAYLOAD_TEXT,
+                TaskAdapter.DIFF.getChangePayload(before, header("1", "renamed", "text" + image)));
+        assertNull(TaskAdapter.DIFF.getChangePayload(before, header("1", "title", "text<img src=\"blob:" + hash('b') + "\" />")));
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class TaskIdGeneratorTest {
+
+    @Test
+    public void idsInATightLoopAreUniqueAndIncreasing() {
+        long previous = 0;
+        for (int i = 0; i < 100_000; i++) {
+            long id = TaskIdGenerator.nextLong();
+            assertTrue(id > previous);
+            previous = id;
+        }
+        assertNotEquals(new Task().getId(), new Task().getId());
+    }
+
+    @Test
+    public void idsFromManyThreadsNeverRepeat() throws Exception {
+        int threads = 8;
+        int perThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<long[]>> futures = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            futures.add(executor.submit(() -> {
+                long[] ids = new long[perThread];
+                for (int i = 0; i < perThread; i++) {
+                    ids[i] = TaskIdGenerator.nextLong();
+                }
+                return ids;
+            }));
+        }
+        Set<Long> seen = new HashSet<>();
+        for (Future<long[]> future : futures) {
+            for (long id : future.get()) {
+                assertTrue(seen.add(id));
+            }
+        }
+        executor.shutdown();
+        assertEquals(threads * perThread, seen.size());
+    }
+
+    @Test
+    public void idsStayAboveMillisecondIds() {
+        assertTrue(TaskIdGenerator.nextLong() > System.currentTimeMillis() * 100);
+    }
+}
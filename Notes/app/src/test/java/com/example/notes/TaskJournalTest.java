@@ -0,0 +1,160 @@
+package com.example.notes;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskJournalTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Task task(String id, String title) {
+        Task task = new Task(title, "<b>" + title + "</b>");
+        task.setId(id);
+        return task;
+    }
+
+    private static List<String> ids(List<TaskHeader> headers) {
+        List<String> ids = new ArrayList<>();
+        for (TaskHeader header : headers) {
+            ids.add(header.getId());
+        }
+        return ids;
+    }
+
+    @Test
+    public void appendedOpsAreReadBackInOrder() throws IOException {
+        TaskJournal journal = new TaskJournal(folder.getRoot());
+        journal.append(Arrays.asList(TaskOp.add(task("1", "one")), TaskOp.add(task("2", "two"))));
+        journal.append(Collections.singletonList(TaskOp.complete("1")));
+
+        List<TaskOp> ops = journal.readActive();
+        assertEquals(3, ops.size());
+        assertEquals(TaskOp.Type.ADD, ops.get(0).getType());
+        assertEquals("two", ops.get(1).toTask().getTitle());
+        assertEquals(TaskOp.Type.COMPLETE, ops.get(2).getType());
+        assertEquals("1", ops.get(2).getTaskId());
+    }
+
+    @Test
+    public void tornFinalRecordIsDroppedAndTruncated() throws IOException {
+        TaskJournal journal = new TaskJournal(folder.getRoot());
+        journal.append(Collections.singletonList(TaskOp.add(task("1", "one"))));
+        journal.append(Collections.singletonList(TaskOp.add(task("2", "two"))));
+        long goodLength = journal.size();
+        journal.append(Collections.singletonList(TaskOp.add(task("3", "three"))));
+
+        File file = new File(folder.getRoot(), "journal.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(goodLength + 11);
+        }
+
+        List<TaskOp> first = journal.readActive();
+        assertEquals(2, first.size());
+        assertEquals(goodLength, file.length());
+
+        List<TaskOp> second = journal.readActive();
+        assertEquals(2, second.size());
+
+        journal.append(Collections.singletonList(TaskOp.delete("1")));
+        List<TaskOp> afterAppend = journal.readActive();
+        assertEquals(3, afterAppend.size());
+        assertEquals(TaskOp.Type.DELETE, afterAppend.get(2).getType());
+    }
+
+    @Test
+    public void recordWithBadChecksumEndsReplay() throws IOException {
+        TaskJournal journal = new TaskJournal(folder.getRoot());
+        journal.append(Collections.singletonList(TaskOp.add(task("1", "one"))));
+        long goodLength = journal.size();
+        journal.append(Collections.singletonList(TaskOp.add(task("2", "two"))));
+
+        File file = new File(folder.getRoot(), "journal.log");
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(file.length() - 1);
+            int last = raf.read();
+            raf.seek(file.length() - 1);
+            raf.write(last ^ 0xFF);
+        }
+
+        assertEquals(1, journal.readActive().size());
+        assertEquals(goodLength, file.length());
+    }
+
+    @Test
+    public void replayIntoSnapshotMatchesDirectMutations() throws IOException {
+        File dir = folder.getRoot();
+        TaskFileStore store = new TaskFileStore(dir);
+        TaskJournal journal = new TaskJournal(dir);
+        journal.append(Arrays.asList(
+                TaskOp.add(task("1", "one")),
+                TaskOp.add(task("2", "two")),
+                TaskOp.add(task("3", "three"))));
+        Task edited = task("2", "two edited");
+        journal.append(Arrays.asList(TaskOp.update(edited), TaskOp.complete("1"), TaskOp.delete("3")));
+
+        new TaskJournalCompactor(journal, store).compactNow();
+
+        TaskFileStore.Index index = store.loadIndex();
+        assertEquals(1, index.getTasks().size());
+        assertEquals("two edited", index.getTasks().get(0).getTitle());
+        assertEquals("two edited", index.getTasks().get(0).getPreview());
+        assertEquals(1, index.getCompleted().size());
+        assertEquals("1", index.getCompleted().get(0).getId());
+        assertTrue(index.getCompleted().get(0).isCompleted());
+        assertEquals("<b>two edited</b>", store.loadTask("2").getDescription());
+    }
+
+    @Test
+    public void compactionFoldsJournalIntoStore() throws IOException {
+        File dir = folder.getRoot();
+        TaskFileStore store = new TaskFileStore(dir);
+        TaskJournal journal = new TaskJournal(dir);
+        TaskJournalCompactor compactor = new TaskJournalCompactor(journal, store);
+
+        journal.append(Arrays.asList(
+                TaskOp.add(task("1", "one")),
+                TaskOp.add(task("2", "two")),
+                TaskOp.add(task("3", "three")),
+                TaskOp.complete("1"),
+                TaskOp.delete("3")));
+        compactor.compactNow();
+
+        assertEquals(0, journal.size());
+        TaskFileStore.Index index = store.loadIndex();
+        assertEquals(Collections.singletonList("2"), ids(index.getTasks()));
+        assertEquals(Collections.singletonList("1"), ids(index.getCompleted()));
+        assertTrue(store.loadTask("1").isCompleted());
+        assertNull(store.loadTask("3"));
+    }
+
+    @Test
+    public void interruptedCompactionIsResumedWithoutLosingNewOps() throws IOException {
+        File dir = folder.getRoot();
+        TaskFileStore store = new TaskFileStore(dir);
+        TaskJournal journal = new TaskJournal(dir);
+        journal.append(Collections.singletonList(TaskOp.add(task("1", "one"))));
+        assertTrue(journal.rotateForCompaction());
+        journal.append(Collections.singletonList(TaskOp.add(task("2", "two"))));
+
+        TaskJournal reopened = new TaskJournal(dir);
+        new TaskJournalCompactor(reopened, store).resumePending();
+
+        assertFalse(reopened.hasPendingCompaction());
+        assertEquals(Collections.singletonList("1"), ids(store.loadIndex().getTasks()));
+        List<TaskOp> pending = reopened.readActive();
+        assertEquals(1, pending.size());
+        assertEquals("2", pending.get(0).getTaskId());
+    }
+}
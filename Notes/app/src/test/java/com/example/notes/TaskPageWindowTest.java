@@ -0,0 +1,80 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskPageWindowTest {
+
+    private static List<TaskHeader> rows(int from, int count) {
+        List<TaskHeader> rows = new ArrayList<>(count);
+        for (int i = from; i < from + count; i++) {
+            rows.add(new TaskHeader(String.valueOf(i), "Задача " + i, false, 0, "", null));
+        }
+        return rows;
+    }
+
+    @Test
+    public void unloadedRowsArePlaceholders() {
+        TaskPageWindow window = new TaskPageWindow(25, 10);
+        assertEquals(3, window.pageCount());
+        assertEquals(5, window.pageLength(2));
+        assertNull(window.get(12));
+
+        window.put(1, rows(10, 10));
+        assertEquals("12", window.get(12).getId());
+        assertNull(window.get(9));
+        assertEquals(Integer.valueOf(15), window.positionOf("15"));
+        assertNull(window.positionOf("3"));
+        assertEquals("19", window.lastRowBefore(2).getId());
+        assertNull(window.lastRowBefore(1));
+        assertEquals(10, window.loadedStart());
+        assertEquals(20, window.loadedEnd());
+
+        window.put(2, rows(20, 10));
+        assertEquals(25, window.loadedEnd());
+        assertNull(window.get(25));
+    }
+
+    @Test
+    public void loadsAroundTheViewportAndDropsFarPages() {
+        TaskPageWindow window = new TaskPageWindow(1_000, 10);
+        assertEquals(Arrays.asList(0, 1, 2), window.missingPages(0, 15, 1));
+
+        for (int page : window.missingPages(500, 512, 1)) {
+            window.put(page, rows(page * 10, 10));
+        }
+        assertEquals(Arrays.asList(49, 50, 51, 52), new ArrayList<>(window.loadedPages()));
+        assertTrue(window.missingPages(500, 512, 1).isEmpty());
+
+        assertEquals(Collections.singletonList(49), window.farPages(505, 522, 0));
+        window.remove(49);
+        assertEquals(3, window.loadedPageCount());
+        assertEquals(Arrays.asList(53, 54), window.missingPages(515, 535, 1));
+    }
+
+    @Test
+    public void memoryStaysAtAFewPagesWhileScrollingTheWholeList() {
+        int size = 100_000;
+        int pageSize = 50;
+        TaskPageWindow window = new TaskPageWindow(size, pageSize);
+        int maxPages = 0;
+        for (int first = 0; first < size; first += 17) {
+            int last = Math.min(size - 1, first + 12);
+            for (int page : window.missingPages(first, last, 1)) {
+                window.put(page, rows(page * pageSize, window.pageLength(page)));
+            }
+            for (int page : window.farPages(first, last, 3)) {
+                window.remove(page);
+            }
+            maxPages = Math.max(maxPages, window.loadedPageCount());
+            assertNotNull(window.get(first));
+        }
+        assertTrue("held " + maxPages + " pages", maxPages <= 8);
+    }
+}
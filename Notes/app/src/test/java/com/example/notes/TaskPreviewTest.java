@@ -0,0 +1,61 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TaskPreviewTest {
+
+    private static final String HASH_A = ImageBlobStore.sha256(new byte[]{1});
+    private static final String HASH_B = ImageBlobStore.sha256(new byte[]{2});
+
+    @Test
+    public void stripsMarkupAndDecodesEntities() {
+        TaskPreview preview = TaskPreview.of("  <b>Купить</b> молоко &amp; хлеб<br>&lt;срочно&gt; &quot;ок&quot; &#39;да&#39;  ");
+        assertEquals("Купить молоко & хлеб\n<срочно> \"ок\" 'да'", preview.text);
+        assertNull(preview.firstImage);
+        assertEquals("", TaskPreview.of(null).text);
+        assertEquals("a < b", TaskPreview.of("a < b").text);
+        assertEquals("&amp;lt;", TaskPreview.of("&amp;amp;lt;").text);
+    }
+
+    @Test
+    public void imagesBecomePlaceholdersAndTheFirstOneIsKept() {
+        TaskPreview preview = TaskPreview.of("до" + ImageBlobStore.imageTag(HASH_A) + "после"
+                + ImageBlobStore.imageTag(HASH_B));
+        assertEquals("до[Изображение]после[Изображение]", preview.text);
+        assertEquals(HASH_A, preview.firstImage);
+    }
+
+    @Test
+    public void paragraphsAreSeparated() {
+        assertEquals("one\ntwo", TaskPreview.of("<p dir=\"ltr\">one</p>\n<p dir=\"ltr\">two</p>\n").text);
+    }
+
+    @Test
+    public void longTextIsCutWithoutReadingTheRest() {
+        StringBuilder html = new StringBuilder();
+        for (int i = 0; i < 50; i++) html.append("слово ");
+        html.append(ImageBlobStore.imageTag(HASH_B));
+        TaskPreview preview = TaskPreview.of(html.toString());
+
+        assertEquals(TaskPreview.LENGTH + 3, preview.text.length());
+        assertTrue(preview.text.endsWith("..."));
+        assertEquals(HASH_B, preview.firstImage);
+
+        String exactly = repeat('x', TaskPreview.LENGTH);
+        assertEquals(exactly, TaskPreview.of(exactly + "   <br>  ").text);
+        assertEquals(exactly + "...", TaskPreview.of(exactly + " y").text);
+    }
+
+    @Test
+    public void plainTextKeepsWordsApartAndDropsImages() {
+        assertEquals("a  b\nc", TaskPreview.plainText("a" + ImageBlobStore.imageTag(HASH_A) + " b<br/>c"));
+    }
+
+    private static String repeat(char c, int count) {
+        StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) builder.append(c);
+        return builder.toString();
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.notes;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public class TaskSearchIndexTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static Task task(String id, String title, String description) {
+        Task task = new Task(title, description);
+        task.setId(id);
+        return task;
+    }
+
+    @Test
+    public void wordsMatchByPrefixAndAllMustMatch() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        index.put(task("1", "Купить молоко", "и <b>хлеб</b>"));
+        index.put(task("2", "Молоток", "вернуть соседу"));
+
+        assertEquals(new HashSet<>(Arrays.asList("1", "2")), index.search(false, "мол"));
+        assertEquals(Collections.singleton("1"), index.search(false, "Мол хле"));
+        assertTrue(index.search(false, "молоко сосед").isEmpty());
+        assertTrue(index.search(false, "  ").isEmpty());
+    }
+
+    @Test
+    public void imagePayloadsAndMarkupAreNotIndexed() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        index.put(task("1", "photo", "before<img src=\"data:image/jpeg;base64,QUJDREVGRw==\" />after"
+                + "<img src=\"blob:abcdef\" style=\"max-width:100%;\" />"));
+
+        assertEquals(Collections.singleton("1"), index.search(false, "after"));
+        assertTrue(index.search(false, "qujd").isEmpty());
+        assertTrue(index.search(false, "abcdef").isEmpty());
+        assertTrue(index.search(false, "style").isEmpty());
+    }
+
+    @Test
+    public void updatesCompletionAndDeletesAreIncremental() {
+        TaskSearchIndex index = new TaskSearchIndex();
+        index.put(task("1", "draft", ""));
+        index.put(task("1", "final", ""));
+        assertTrue(index.search(false, "draft").isEmpty());
+        assertEquals(Collections.singleton("1"), index.search(false, "fin"));
+
+        index.setCompleted("1");
+        assertTrue(index.search(false, "fin").isEmpty());
+        assertEquals(Collections.singleton("1"), index.search(true, "fin"));
+
+        index.remove("1");
+        assertTrue(index.search(true, "fin").isEmpty());
+        assertEquals(0, index.size());
+    }
+
+    @Test
+    public void savedIndexLoadsWithTheSameResults() throws IOException {
+        TaskSearchIndex index = new TaskSearchIndex();
+        index.put(task("1", "alpha beta", ""));
+        index.put(task("2", "beta gamma", ""));
+        index.setCompleted("2");
+        File file = new File(folder.getRoot(), "search.idx");
+        index.save(file);
+        assertFalse(index.isDirty());
+
+        TaskSearchIndex loaded = TaskSearchIndex.load(file);
+        assertEquals(2, loaded.size());
+        assertEquals(Collections.singleton("1"), loaded.search(false, "be"));
+        assertEquals(Collections.singleton("2"), loaded.search(true, "gam"));
+        assertFalse(loaded.isDirty());
+    }
+}
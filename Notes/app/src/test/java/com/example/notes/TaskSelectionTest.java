@@ -0,0 +1,95 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TaskSelectionTest {
+
+    private static List<TaskHeader> rows(int count) {
+        List<TaskHeader> rows = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            rows.add(new TaskHeader(String.valueOf(i), "Задача " + i, false, 0, "", null));
+        }
+        return rows;
+    }
+
+    @Test
+    public void togglesAndRangesFollowIdsNotPositions() {
+        List<TaskHeader> rows = rows(6);
+        TaskSelection selection = new TaskSelection();
+        selection.toggle("1");
+        selection.selectRange(rows, 4, 3);
+        assertEquals(Arrays.asList("1", "3", "4"), selection.resolve(rows));
+
+        Collections.reverse(rows);
+        rows.remove(0);
+        assertEquals(Arrays.asList("4", "3", "1"), selection.resolve(rows));
+
+        selection.toggle("3");
+        assertEquals(Arrays.asList("4", "1"), selection.resolve(rows));
+        assertEquals(Arrays.asList("1", "4"), selection.explicitIds());
+        selection.clear();
+        assertTrue(selection.isEmpty());
+    }
+
+    @Test
+    public void selectAllKeepsExceptionsAndCoversNewRows() {
+        List<TaskHeader> rows = rows(4);
+        TaskSelection selection = new TaskSelection();
+        selection.selectAll();
+        selection.toggle("2");
+        assertTrue(selection.isSelected("later"));
+        assertEquals(Arrays.asList("0", "1", "3"), selection.resolve(rows));
+
+        selection.selectRange(rows, 0, 3);
+        assertEquals(4, selection.resolve(rows).size());
+        assertTrue(selection.explicitIds().isEmpty());
+    }
+
+    @Test
+    public void selectsAHundredThousandRowsByRange() {
+        List<TaskHeader> rows = rows(100_000);
+        TaskSelection selection = new TaskSelection();
+        selection.selectAll();
+        selection.clear();
+        selection.selectRange(rows, 0, rows.size() - 1);
+
+        int selected = 0;
+        for (TaskHeader row : rows) {
+            if (selection.isSelected(row.getId())) selected++;
+        }
+        assertEquals(rows.size(), selected);
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        List<TaskHeader> rows = rows(3);
+        TaskSelection selection = new TaskSelection();
+        selection.selectAll();
+        selection.toggle("1");
+        TaskSelection copy = selection.copy();
+        selection.clear();
+
+        assertTrue(selection.isEmpty());
+        assertEquals(Arrays.asList("0", "2"), copy.resolve(rows));
+    }
+
+    @Test
+    public void restoresFromItsSavedParts() {
+        List<TaskHeader> rows = rows(4);
+        TaskSelection selection = new TaskSelection();
+        selection.selectAll();
+        selection.toggle("3");
+        selection.toggle("0");
+
+        TaskSelection restored = TaskSelection.restore(selection.isAll(), selection.toggledIds());
+        assertEquals(Arrays.asList("1", "2"), restored.resolve(rows));
+        assertTrue(TaskSelection.restore(false, null).isEmpty());
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.notes;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailBackfillJobTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void checkpointResumesAfterTheLastHeaderDone() throws IOException {
+        File state = new File(folder.getRoot(), "thumbnails.state");
+        assertNull(ThumbnailBackfillJob.Checkpoint.load(state).cursor());
+
+        new ThumbnailBackfillJob.Checkpoint(true, "42", 7L, false).save(state);
+        ThumbnailBackfillJob.Checkpoint loaded = ThumbnailBackfillJob.Checkpoint.load(state);
+        assertFalse(loaded.done);
+        TaskHeader cursor = loaded.cursor();
+        assertEquals("42", cursor.getId());
+        assertTrue(cursor.isCompleted());
+        assertEquals(7L, cursor.getSortKey());
+    }
+
+    @Test
+    public void unreadableCheckpointStartsOver() throws IOException {
+        File state = new File(folder.getRoot(), "thumbnails.state");
+        try (FileOutputStream out = new FileOutputStream(state)) {
+            out.write(new byte[]{0, 0, 0, 1, 1});
+        }
+        ThumbnailBackfillJob.Checkpoint loaded = ThumbnailBackfillJob.Checkpoint.load(state);
+        assertFalse(loaded.done);
+        assertFalse(loaded.completed);
+        assertNull(loaded.cursor());
+    }
+}
@@ -0,0 +1,17 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThumbnailDecoderTest {
+
+    @Test
+    public void sampleSizeIsTheLargestPowerOfTwoThatStillCoversTheView() {
+        assertEquals(1, ThumbnailDecoder.sampleSize(200, 200, 160, 160));
+        assertEquals(2, ThumbnailDecoder.sampleSize(400, 300, 160, 120));
+        assertEquals(16, ThumbnailDecoder.sampleSize(4000, 3000, 160, 160));
+        assertEquals(8, ThumbnailDecoder.sampleSize(4000, 1000, 160, 120));
+        assertEquals(1, ThumbnailDecoder.sampleSize(4000, 3000, 0, 0));
+    }
+}
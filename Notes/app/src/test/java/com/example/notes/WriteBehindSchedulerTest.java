@@ -0,0 +1,171 @@
+package com.example.notes;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class WriteBehindSchedulerTest {
+
+    private final List<List<TaskOp>> batches = new ArrayList<>();
+
+    private WriteBehindScheduler newScheduler() {
+        return new WriteBehindScheduler(batch -> batches.add(new ArrayList<>(batch)), 60_000);
+    }
+
+    private static Task task(String id, String title) {
+        Task task = new Task(title, "");
+        task.setId(id);
+        return task;
+    }
+
+    @Test
+    public void nothingIsWrittenBeforeTheWindowOrFlush() {
+        WriteBehindScheduler scheduler = newScheduler();
+        scheduler.submit(Collections.singletonList(TaskOp.add(task("1", "one"))), null);
+
+        assertTrue(batches.isEmpty());
+        assertTrue(scheduler.isPending("1"));
+
+        scheduler.flush();
+        assertEquals(1, batches.size());
+        assertFalse(scheduler.isPending("1"));
+    }
+
+    @Test
+    public void updatesAreFoldedIntoEarlierAdd() {
+        WriteBehindScheduler scheduler = newScheduler();
+        scheduler.submit(Collections.singletonList(TaskOp.add(task("1", "one"))), null);
+        scheduler.submit(Collections.singletonList(TaskOp.update(task("1", "one v2"))), null);
+        scheduler.submit(Collections.singletonList(TaskOp.update(task("1", "one v3"))), null);
+        scheduler.flush();
+
+        List<TaskOp> batch = batches.get(0);
+        assertEquals(1, batch.size());
+        assertEquals(TaskOp.Type.ADD, batch.get(0).getType());
+        assertEquals("one v3", batch.get(0).toTask().getTitle());
+
+        WriteBehindScheduler.Stats stats = scheduler.getStats();
+        assertEquals(3, stats.submittedOps);
+        assertEquals(1, stats.writtenOps);
+        assertEquals(2, stats.coalescedOps());
+    }
+
+    @Test
+    public void deleteCancelsTaskAddedInSameWindow() {
+        WriteBehindScheduler scheduler = newScheduler();
+        scheduler.submit(Arrays.asList(TaskOp.add(task("1", "one")), TaskOp.add(task("2", "two"))), null);
+        scheduler.submit(Collections.singletonList(TaskOp.update(task("1", "edited"))), null);
+        scheduler.submit(Collections.singletonList(TaskOp.delete("1")), null);
+        scheduler.flush();
+
+        List<TaskOp> batch = batches.get(0);
+        assertEquals(1, batch.size());
+        assertEquals("2", batch.get(0).getTaskId());
+    }
+
+    @Test
+    public void deleteOfPersistedTaskDropsItsPendingUpdates() {
+        WriteBehindScheduler scheduler = newScheduler();
+        scheduler.submit(Arrays.asList(TaskOp.update(task("1", "edited")), TaskOp.complete("1")), null);
+        scheduler.submit(Collections.singletonList(TaskOp.delete("1")), null);
+        scheduler.flush();
+
+        List<TaskOp> batch = batches.get(0);
+        assertEquals(1, batch.size());
+        assertEquals(TaskOp.Type.DELETE, batch.get(0).getType());
+    }
+
+    @Test
+    public void orderOfAddsAndCompletesIsKept() {
+        WriteBehindScheduler scheduler = newScheduler();
+        scheduler.submit(Arrays.asList(TaskOp.add(task("1", "one")), TaskOp.add(task("2", "two"))), null);
+        scheduler.submit(Collections.singletonList(TaskOp.complete("1")), null);
+        scheduler.flush();
+
+        List<TaskOp> batch = batches.get(0);
+        assertEquals(Arrays.asList("1", "2", "1"),
+                Arrays.asList(batch.get(0).getTaskId(), batch.get(1).getTaskId(), batch.get(2).getTaskId()));
+        assertEquals(TaskOp.Type.COMPLETE, batch.get(2).getType());
+    }
+
+    @Test
+    public void callbacksRunAfterTheBatchIsWritten() {
+        WriteBehindScheduler scheduler = newScheduler();
+        AtomicInteger batchesSeenByCallback = new AtomicInteger(-1);
+        scheduler.submit(Collections.singletonList(TaskOp.delete("1")),
+                () -> batchesSeenByCallback.set(batches.size()));
+        scheduler.flush();
+
+        assertEquals(1, batchesSeenByCallback.get());
+    }
+
+    @Test
+    public void afterBatchRunsOnceAfterTheCallbacks() {
+        WriteBehindScheduler scheduler = newScheduler();
+        List<String> order = new ArrayList<>();
+        scheduler.setAfterBatch(() -> order.add("after"));
+        scheduler.submit(Collections.singletonList(TaskOp.delete("1")), () -> order.add("first"));
+        scheduler.submit(Collections.singletonList(TaskOp.delete("2")), () -> order.add("second"));
+        scheduler.flush();
+
+        assertEquals(Arrays.asList("first", "second", "after"), order);
+    }
+
+    @Test
+    public void failedBatchIsKeptAndWrittenLater() {
+        AtomicInteger attempts = new AtomicInteger();
+        WriteBehindScheduler scheduler = new WriteBehindScheduler(batch -> {
+            if (attempts.incrementAndGet() == 1) throw new IllegalStateException("disk full");
+            batches.add(new ArrayList<>(batch));
+        }, 60_000);
+        AtomicInteger callbacks = new AtomicInteger();
+        scheduler.submit(Collections.singletonList(TaskOp.add(task("1", "one"))), callbacks::incrementAndGet);
+        scheduler.flush();
+
+        assertTrue(batches.isEmpty());
+        assertEquals(0, callbacks.get());
+        assertTrue(scheduler.isPending("1"));
+
+        scheduler.submit(Collections.singletonList(TaskOp.add(task("2", "two"))), null);
+        scheduler.flush();
+        assertEquals(Arrays.asList("1", "2"),
+                Arrays.asList(batches.get(0).get(0).getTaskId(), batches.get(0).get(1).getTaskId()));
+        assertEquals(1, callbacks.get());
+        assertFalse(scheduler.isPending("1"));
+    }
+
+    @Test
+    public void retryDelayDoublesUpToACap() {
+        assertEquals(600, WriteBehindScheduler.retryDelay(300, 1));
+        assertEquals(1200, WriteBehindScheduler.retryDelay(300, 2));
+        assertEquals(WriteBehindScheduler.MAX_RETRY_DELAY_MS, WriteBehindScheduler.retryDelay(300, 50));
+    }
+
+    @Test
+    public void deletesOfManyTasksMergeWithTheirOwnOpsOnly() {
+        WriteBehindScheduler scheduler = newScheduler();
+        List<TaskOp> adds = new ArrayList<>();
+        List<TaskOp> deletes = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            if (i % 2 == 0) adds.add(TaskOp.add(task("t" + i, "task")));
+            deletes.add(TaskOp.delete("t" + i));
+        }
+        scheduler.submit(adds, null);
+        scheduler.submit(deletes, null);
+        assertFalse(scheduler.isPending("t0"));
+        assertTrue(scheduler.isPending("t1"));
+        scheduler.flush();
+
+        List<TaskOp> batch = batches.get(0);
+        assertEquals(50_000, batch.size());
+        for (TaskOp op : batch) {
+            assertEquals(TaskOp.Type.DELETE, op.getType());
+        }
+    }
+}